@@ -5,7 +5,6 @@ import android.app.Fragment;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
@@ -13,14 +12,17 @@ import android.graphics.YuvImage;
 import android.hardware.Camera;
 import android.hardware.Camera.PictureCallback;
 import android.hardware.Camera.ShutterCallback;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraManager;
 import android.media.AudioManager;
 import android.media.CamcorderProfile;
 import android.media.Image;
+import android.media.ImageReader;
 import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.os.Handler;
-import android.os.HandlerThread;
-import android.util.Base64;
+import android.os.Looper;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.Size;
@@ -41,24 +43,33 @@ import android.widget.RelativeLayout;
 import androidx.exifinterface.media.ExifInterface;
 
 import com.cordovaplugintflite.customview.AutoFitTextureView;
-import com.cordovaplugintflite.env.ImageUtils;
+import com.cordovaplugintflite.env.ExifOrientation;
+import com.cordovaplugintflite.env.JpegRegion;
+import com.cordovaplugintflite.env.Nv21Rotation;
+import com.cordovaplugintflite.env.ObjectPool;
+import com.cordovaplugintflite.env.YuvFrame;
+
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public abstract class CameraActivity extends Fragment {
 
   public interface CameraPreviewListener {
-    void onPictureTaken(String originalPicture);
+    void onPictureTaken(byte[] picture);
+    void onPictureStored(String path);
     void onPictureTakenError(String message);
-    void onSnapshotTaken(String originalPicture);
+    void onSnapshotTaken(byte[] picture);
     void onSnapshotTakenError(String message);
     void onFocusSet(int pointX, int pointY);
     void onFocusSetError(String message);
@@ -69,6 +80,7 @@ public abstract class CameraActivity extends Fragment {
     void onStopRecordVideo(String file);
     void onStopRecordVideoError(String error);
     void onObjectDetected(String error);
+    void onObjectDetected(JSONObject detection);
   }
 
 //  protected TextView frameValueTextView, cropValueTextView, inferenceTimeTextView;
@@ -87,6 +99,8 @@ public abstract class CameraActivity extends Fragment {
   private int numberOfCameras;
   private int cameraCurrentlyLocked;
   private int currentQuality;
+  // Width the cropped picture is subsampled toward, or 0 to keep its full resolution.
+  private int currentCropWidth;
 
   // The first rear facing camera
   private int defaultCameraId;
@@ -105,6 +119,14 @@ public abstract class CameraActivity extends Fragment {
   public int y;
 
   public String overlay;
+  public List<String> detectClasses;
+  public String delegate = "auto";
+  public int numThreads = 0;
+  public int previewBuffers = FrameRing.DEFAULT_SIZE;
+  public boolean useCamera2 = false;
+  public float maxDetectionRate = InferenceScheduler.DEFAULT_MAX_RATE;
+  public float minSharpness = 0;
+  public boolean detailedEvents = false;
   public double x0 = 0;
   public double y0 = 0;
   public double w0 = 1;
@@ -178,15 +200,47 @@ public abstract class CameraActivity extends Fragment {
     this.y0 = y;
     this.w0 = w;
     this.h0 = h;
+    // A running preview was sized for the previous area.
+    if (isResumed()) {
+      mainHandler.post(this::refreshPreviewSize);
+    }
   }
 
   public void setOverlay(String overlay) {
     this.overlay = overlay;
   }
 
+  public void setDetectClasses(List<String> detectClasses) {
+    this.detectClasses = detectClasses;
+  }
+
+  public void setDelegate(String delegate, int numThreads) {
+    this.delegate = delegate;
+    this.numThreads = numThreads;
+  }
+
+  public void setPreviewBuffers(int previewBuffers) {
+    this.previewBuffers = previewBuffers;
+  }
+
+  public void setUseCamera2(boolean useCamera2) {
+    this.useCamera2 = useCamera2;
+  }
+
+  public void setMaxDetectionRate(float maxDetectionRate) {
+    this.maxDetectionRate = maxDetectionRate;
+  }
+
+  public void setSharpness(float minSharpness, boolean detailedEvents) {
+    this.minSharpness = minSharpness;
+    this.detailedEvents = detailedEvents;
+  }
+
   protected void createCameraPreview(){
     if(mPreview == null) {
       setDefaultCameraId();
+      camera2Id = useCamera2 ? chooseCamera2() : null;
+      useCamera2API = camera2Id != null;
 
       //set box position and size
       FrameLayout.LayoutParams layoutParams = new FrameLayout.LayoutParams(width, height);
@@ -196,6 +250,8 @@ public abstract class CameraActivity extends Fragment {
 
       //video view
       mPreview = new Preview(getActivity());
+      mPreview.setSizeChooser(this::choosePreviewSize);
+      mPreview.setOnPreviewSizeChangedListener(this::onCameraPreviewSizeChanged);
       mainLayout = view.findViewById(getResources().getIdentifier("video_view", "id", appResourcesPackage));
       mainLayout.setLayoutParams(new RelativeLayout.LayoutParams(RelativeLayout.LayoutParams.MATCH_PARENT, RelativeLayout.LayoutParams.MATCH_PARENT));
       mainLayout.addView(mPreview);
@@ -233,7 +289,7 @@ public abstract class CameraActivity extends Fragment {
                 setFocusArea((int) event.getX(0), (int) event.getY(0), new Camera.AutoFocusCallback() {
                   public void onAutoFocus(boolean success, Camera camera) {
                     if (success) {
-                      takePicture(0, 0, 85);
+                      takePicture(0, 0, 85, 0);
                     } else {
                       Log.d(TAG, "onTouch:" + " setFocusArea() did not suceed");
                     }
@@ -241,7 +297,7 @@ public abstract class CameraActivity extends Fragment {
                 });
 
               } else if (tapToTakePicture) {
-                takePicture(0, 0, 85);
+                takePicture(0, 0, 85, 0);
 
               } else if (tapToFocus) {
                 setFocusArea((int) event.getX(0), (int) event.getY(0), new Camera.AutoFocusCallback() {
@@ -333,36 +389,65 @@ public abstract class CameraActivity extends Fragment {
     }
   }
 
+  /**
+   * @return the Camera2 id facing {@link #defaultCamera}, or null if there is none or it only
+   * offers legacy support, in which case the Camera1 preview is used.
+   */
+  private String chooseCamera2() {
+    final CameraManager manager = (CameraManager) getActivity().getSystemService(Context.CAMERA_SERVICE);
+    final int facing = "front".equals(defaultCamera)
+      ? CameraCharacteristics.LENS_FACING_FRONT : CameraCharacteristics.LENS_FACING_BACK;
+    try {
+      for (final String id : manager.getCameraIdList()) {
+        final CameraCharacteristics characteristics = manager.getCameraCharacteristics(id);
+        final Integer lensFacing = characteristics.get(CameraCharacteristics.LENS_FACING);
+        if (lensFacing == null || lensFacing != facing) {
+          continue;
+        }
+        final Integer level = characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+        if (level == null || level == CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL_LEGACY) {
+          Log.d(TAG, "Camera " + id + " only has legacy Camera2 support");
+          return null;
+        }
+        return id;
+      }
+    } catch (CameraAccessException e) {
+      Log.e(TAG, "Can't list Camera2 devices", e);
+    }
+    return null;
+  }
+
   @Override
   public void onResume() {
     super.onResume();
 
-    handlerThread = new HandlerThread("inference");
-    handlerThread.start();
-    handler = new Handler(handlerThread.getLooper());
-
+    if (useCamera2API) {
+      // The child fragment opens and closes the camera with this fragment's lifecycle.
+      addCamera2Fragment();
+    } else {
 //    mCamera = Camera.open(getCameraId());
-    mCamera = Camera.open(defaultCameraId);
+      mCamera = Camera.open(defaultCameraId);
 
-    if (cameraParameters != null) {
-      mCamera.setParameters(cameraParameters);
-    }
+      if (cameraParameters != null) {
+        mCamera.setParameters(cameraParameters);
+      }
 
-    cameraCurrentlyLocked = defaultCameraId;
+      cameraCurrentlyLocked = defaultCameraId;
 
 //    addPreviewCallback();
 
-    if(mPreview.mPreviewSize == null){
-      mPreview.setCamera(mCamera, cameraCurrentlyLocked);
-      addPreviewCallback();
+      if(mPreview.mPreviewSize == null){
+        mPreview.setCamera(mCamera, cameraCurrentlyLocked);
+        addPreviewCallback();
 //      eventListener.onCameraStarted();
-    } else {
-      mPreview.switchCamera(mCamera, cameraCurrentlyLocked);
-      addPreviewCallback();
-      mCamera.startPreview();
-    }
+      } else {
+        mPreview.switchCamera(mCamera, cameraCurrentlyLocked);
+        addPreviewCallback();
+        mCamera.startPreview();
+      }
 
-    Log.d(TAG, "cameraCurrentlyLocked:" + cameraCurrentlyLocked);
+      Log.d(TAG, "cameraCurrentlyLocked:" + cameraCurrentlyLocked);
+    }
 
     final FrameLayout frameContainerLayout = view.findViewById(getResources().getIdentifier("frame_container", "id", appResourcesPackage));
 
@@ -404,7 +489,7 @@ public abstract class CameraActivity extends Fragment {
 
         mCamera.setPreviewCallbackWithBuffer(CameraActivity.this::onPreviewFrame);
         Camera.Size s = mCamera.getParameters().getPreviewSize();
-        mCamera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.height, s.width)]);
+        attachFrameRing(s.width, s.height);
 
         textureView.setAspectRatio(s.height, s.width);
 
@@ -427,7 +512,7 @@ public abstract class CameraActivity extends Fragment {
   private void addPreviewCallback() {
     mCamera.setPreviewCallbackWithBuffer(this::onPreviewFrame);
     Camera.Size s = mCamera.getParameters().getPreviewSize();
-    mCamera.addCallbackBuffer(new byte[ImageUtils.getYUVByteSize(s.width, s.height)]);
+    attachFrameRing(s.width, s.height);
     /*if (textureView.isAvailable()) {
       mCamera.startPreview();
     } else {
@@ -435,6 +520,128 @@ public abstract class CameraActivity extends Fragment {
     }*/
   }
 
+  /**
+   * Camera1 preview size: the smallest one with the aspect ratio of {@code optimal} whose
+   * detection area still covers the model input.
+   */
+  private Camera.Size choosePreviewSize(final List<Camera.Size> sizes, final Camera.Size optimal) {
+    final List<Size> choices = new ArrayList<>();
+    for (final Camera.Size size : sizes) {
+      choices.add(new Size(size.width, size.height));
+    }
+    // Camera1 frames are processed as if the sensor was mounted at 90 degrees.
+    final Size chosen = negotiatePreviewSize(choices, new Size(optimal.width, optimal.height),
+      90 - getScreenOrientation());
+    for (final Camera.Size size : sizes) {
+      if (size.width == chosen.getWidth() && size.height == chosen.getHeight()) {
+        return size;
+      }
+    }
+    return optimal;
+  }
+
+  private Size negotiatePreviewSize(final List<Size> choices, final Size optimal, final int orientation) {
+    final Size modelInput = getModelInputSize();
+    if (modelInput == null) {
+      return optimal;
+    }
+    final Size chosen = PreviewSizeNegotiator.choose(choices, optimal, modelInput,
+      (frameWidth, frameHeight) -> getDetectionRoi(frameWidth, frameHeight, orientation), orientation);
+    Log.d(TAG, "Preview size " + chosen + " for model input " + modelInput + ", view size " + optimal);
+    return chosen;
+  }
+
+  /**
+   * Sizes the Camera1 ring again once the preview size changed under a running preview.
+   */
+  private void onCameraPreviewSizeChanged(final int width, final int height) {
+    final FrameRing ring = frameRing;
+    if (ring != null && (ring.getWidth() != width || ring.getHeight() != height)) {
+      attachFrameRing(width, height);
+    }
+  }
+
+  /**
+   * Chooses the preview size again, after the detection area changed.
+   */
+  private void refreshPreviewSize() {
+    if (camera2Fragment != null) {
+      camera2Fragment.reopenCamera();
+    } else if (mPreview != null) {
+      mPreview.refreshPreviewSize();
+    }
+  }
+
+  private void attachFrameRing(final int width, final int height) {
+    detachFrameSource();
+    frameRing = new FrameRing(mCamera, previewBuffers, width, height);
+    frameSource = frameRing;
+  }
+
+  private void detachFrameSource() {
+    if (frameSource != null) {
+      frameSource.detach();
+      framesDelivered += frameSource.getDelivered();
+      framesDropped += frameSource.getDropped();
+      frameSource = null;
+      frameRing = null;
+    }
+  }
+
+  private void addCamera2Fragment() {
+    if (camera2Fragment != null) {
+      return;
+    }
+    final int maxImages = Math.max(ImageReaderSource.MIN_MAX_IMAGES, previewBuffers);
+    camera2Fragment = CameraConnectionFragment.newInstance(
+      new CameraConnectionFragment.ConnectionCallback() {
+        @Override
+        public Size choosePreviewSize(final Size[] choices, final Size optimal, final int sensorOrientation) {
+          return negotiatePreviewSize(Arrays.asList(choices), optimal, sensorOrientation - getScreenOrientation());
+        }
+
+        @Override
+        public void onPreviewSizeChosen(final Size size, final int cameraRotation) {
+          detachFrameSource();
+          frameSource = new ImageReaderSource(maxImages, CameraActivity.this::onReadyForFrame);
+          // Reopening the camera after a pause picks the same size again.
+          if (size.getWidth() != previewWidth || size.getHeight() != previewHeight) {
+            previewWidth = size.getWidth();
+            previewHeight = size.getHeight();
+            CameraActivity.this.onPreviewSizeChosen(size, cameraRotation);
+          }
+        }
+
+        @Override
+        public void onPreviewClosing() {
+          detachFrameSource();
+        }
+      },
+      new ImageReader.OnImageAvailableListener() {
+        @Override
+        public void onImageAvailable(final ImageReader reader) {
+          final FrameSource source = frameSource;
+          if (source instanceof ImageReaderSource) {
+            ((ImageReaderSource) source).onImageAvailable(reader);
+          } else {
+            final Image image = reader.acquireLatestImage();
+            if (image != null) {
+              image.close();
+            }
+          }
+        }
+      },
+      getResources().getIdentifier("camera_connection_fragment", "layout", appResourcesPackage),
+      getDesiredPreviewFrameSize(),
+      appResourcesPackage);
+    camera2Fragment.setCamera(camera2Id);
+    camera2Fragment.setMaxImages(maxImages);
+    getChildFragmentManager()
+      .beginTransaction()
+      .add(getResources().getIdentifier("video_view", "id", appResourcesPackage), camera2Fragment)
+      .commit();
+  }
+
   @Override
   public void onPause() {
     super.onPause();
@@ -445,6 +652,7 @@ public abstract class CameraActivity extends Fragment {
       mPreview.setCamera(null, -1);
 //      addPreviewCallback();
 //      mCamera.setPreviewCallback(null);
+      detachFrameSource();
       mCamera.release();
       mCamera = null;
     }
@@ -458,6 +666,11 @@ public abstract class CameraActivity extends Fragment {
   }
 
   public void switchCamera() {
+    if (useCamera2API) {
+      Log.d(TAG, "switchCamera is not supported on the Camera2 preview");
+      return;
+    }
+
     // Find the total number of cameras available
     numberOfCameras = Camera.getNumberOfCameras();
 
@@ -472,6 +685,7 @@ public abstract class CameraActivity extends Fragment {
         mCamera.stopPreview();
         mPreview.setCamera(null, -1);
 //        addPreviewCallback();
+        detachFrameSource();
         mCamera.release();
         mCamera = null;
       }
@@ -566,8 +780,9 @@ public abstract class CameraActivity extends Fragment {
 
       try {
         if (!disableExifHeaderStripping) {
+          final boolean flip = cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT;
           Matrix matrix = new Matrix();
-          if (cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+          if (flip) {
             matrix.preScale(1.0f, -1.0f);
           }
 
@@ -579,22 +794,28 @@ public abstract class CameraActivity extends Fragment {
             matrix.preRotate(rotationInDegrees);
           }
 
-          Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-
-          // Check if matrix has changed. In that case, apply matrix and override data
-          if (!matrix.isIdentity()) {
-            bitmap = applyMatrix(bitmap, matrix);
-          }
-
-          int w = bitmap.getWidth();
-          int h = bitmap.getHeight();
+          // Only the card region is decoded, and only it is rotated: the full picture is never
+          // held in memory.
+          final Rect encoded = JpegRegion.bounds(data);
+          final int w = rotationInDegrees % 180 == 0 ? encoded.width() : encoded.height();
+          final int h = rotationInDegrees % 180 == 0 ? encoded.height() : encoded.width();
 
           int height = (int) (h0 * h);
           int y = (int) (y0 * h);
           int width = Math.min((int) (w0 * w), (int) (height * 1.58));
           int x = ((int) (w0 * w) - width) / 2;
 
-          bitmap = Bitmap.createBitmap(bitmap, x, y, width, height);
+          final Rect crop = new Rect(x, y, x + width, y + height);
+          if (!crop.intersect(0, 0, w, h)) {
+            throw new IllegalArgumentException("Detection area outside the picture");
+          }
+          final Rect region = JpegRegion.toEncoded(crop, encoded.width(), encoded.height(), rotationInDegrees, flip);
+          Bitmap bitmap = JpegRegion.decode(data, region, JpegRegion.sampleSize(crop.width(), currentCropWidth));
+
+          // Check if matrix has changed. In that case, apply matrix and override data
+          if (!matrix.isIdentity()) {
+            bitmap = applyMatrix(bitmap, matrix);
+          }
 
           ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
           bitmap.compress(Bitmap.CompressFormat.JPEG, currentQuality, outputStream);
@@ -602,15 +823,13 @@ public abstract class CameraActivity extends Fragment {
         }
 
         if (!storeToFile) {
-          String encodedImage = Base64.encodeToString(data, Base64.NO_WRAP);
-
-          eventListener.onPictureTaken(encodedImage);
+          eventListener.onPictureTaken(data);
         } else {
           String path = getTempFilePath();
           FileOutputStream out = new FileOutputStream(path);
           out.write(data);
           out.close();
-          eventListener.onPictureTaken(path);
+          eventListener.onPictureStored(path);
         }
         Log.d(TAG, "CameraPreview pictureTakenHandler called back");
       } catch (OutOfMemoryError e) {
@@ -623,6 +842,7 @@ public abstract class CameraActivity extends Fragment {
         eventListener.onPictureTakenError("IO Error when extracting exif");
       } catch (Exception e) {
         Log.d(TAG, "CameraPreview onPictureTaken general exception");
+        eventListener.onPictureTakenError("Picture processing failed");
       } finally {
         canTakePicture = true;
         mCamera.startPreview();
@@ -700,79 +920,76 @@ public abstract class CameraActivity extends Fragment {
     return size;
   }
 
-  static byte[] rotateNV21(final byte[] yuv, final int width, final int height, final int rotation){
-    if (rotation == 0) return yuv;
-    if (rotation % 90 != 0 || rotation < 0 || rotation > 270) {
-      throw new IllegalArgumentException("0 <= rotation < 360, rotation % 90 == 0");
+  /**
+   * Takes a snapshot from the next preview frame, without interrupting detection.
+   *
+   * @param rotatePixels Rotate the frame upright before encoding it. By default the frame is
+   *                     encoded as the sensor delivers it and the JPEG carries the rotation as its
+   *                     EXIF orientation.
+   */
+  public void takeSnapshot(final int quality, final boolean rotatePixels) {
+    if (useCamera2API || mCamera == null) {
+      eventListener.onSnapshotTakenError("Snapshots need the Camera1 preview");
+      return;
     }
+    snapshotRotatePixels = rotatePixels;
+    snapshotQuality = quality;
+  }
 
-    final byte[]  output    = new byte[yuv.length];
-    final int     frameSize = width * height;
-    final boolean swap      = rotation % 180 != 0;
-    final boolean xflip     = rotation % 270 != 0;
-    final boolean yflip     = rotation >= 180;
-
-    for (int j = 0; j < height; j++) {
-      for (int i = 0; i < width; i++) {
-        final int yIn = j * width + i;
-        final int uIn = frameSize + (j >> 1) * width + (i & ~1);
-        final int vIn = uIn       + 1;
-
-        final int wOut     = swap  ? height              : width;
-        final int hOut     = swap  ? width               : height;
-        final int iSwapped = swap  ? j                   : i;
-        final int jSwapped = swap  ? i                   : j;
-        final int iOut     = xflip ? wOut - iSwapped - 1 : iSwapped;
-        final int jOut     = yflip ? hOut - jSwapped - 1 : jSwapped;
-
-        final int yOut = jOut * wOut + iOut;
-        final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
-        final int vOut = uOut + 1;
-
-        output[yOut] = (byte)(0xff & yuv[yIn]);
-        output[uOut] = (byte)(0xff & yuv[uIn]);
-        output[vOut] = (byte)(0xff & yuv[vIn]);
+  private void encodeSnapshot(final byte[] frame, final Camera camera, final int quality,
+                              final boolean rotatePixels) {
+    byte[] rotated = null;
+    try {
+      final Camera.Parameters parameters = camera.getParameters();
+      final Camera.Size size = parameters.getPreviewSize();
+      final int orientation = mPreview.getDisplayOrientation();
+      final int rotation = mPreview.getCameraFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT
+        ? (360 - orientation) % 360 : orientation;
+      byte[] pixels = frame;
+      int width = size.width;
+      int height = size.height;
+      if (rotatePixels && rotation != 0) {
+        rotated = acquireRotationBuffer(frame.length);
+        Nv21Rotation.rotate(frame, width, height, rotation, rotated);
+        pixels = rotated;
+        if (rotation % 180 != 0) {
+          width = size.height;
+          height = size.width;
+        }
+      }
+      final YuvImage yuvImage = new YuvImage(pixels, parameters.getPreviewFormat(), width, height, null);
+      final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      yuvImage.compressToJpeg(new Rect(0, 0, width, height), quality, byteArrayOutputStream);
+      byte[] data = byteArrayOutputStream.toByteArray();
+      if (!rotatePixels) {
+        data = ExifOrientation.stamp(data, rotation);
+      }
+      eventListener.onSnapshotTaken(data);
+    } catch (final RuntimeException e) {
+      Log.e(TAG, "CameraPreview snapshot failed", e);
+      eventListener.onSnapshotTakenError("Snapshot failed");
+    } finally {
+      if (rotated != null) {
+        rotationBuffers.release(rotated);
       }
     }
-    return output;
   }
 
-  public void takeSnapshot(final int quality) {
-    mCamera.setPreviewCallback(new Camera.PreviewCallback() {
-      @Override
-      public void onPreviewFrame(byte[] bytes, Camera camera) {
-        try {
-          Camera.Parameters parameters = camera.getParameters();
-          Camera.Size size = parameters.getPreviewSize();
-          int orientation = mPreview.getDisplayOrientation();
-          if (mPreview.getCameraFacing() == Camera.CameraInfo.CAMERA_FACING_FRONT) {
-            bytes = rotateNV21(bytes, size.width, size.height, (360 - orientation) % 360);
-          } else {
-            bytes = rotateNV21(bytes, size.width, size.height, orientation);
-          }
-          // switch width/height when rotating 90/270 deg
-          Rect rect = orientation == 90 || orientation == 270 ?
-            new Rect(0, 0, size.height, size.width) :
-            new Rect(0, 0, size.width, size.height);
-          YuvImage yuvImage = new YuvImage(bytes, parameters.getPreviewFormat(), rect.width(), rect.height(), null);
-          ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-          yuvImage.compressToJpeg(rect, quality, byteArrayOutputStream);
-          byte[] data = byteArrayOutputStream.toByteArray();
-          byteArrayOutputStream.close();
-          eventListener.onSnapshotTaken(Base64.encodeToString(data, Base64.NO_WRAP));
-        } catch (IOException e) {
-          Log.d(TAG, "CameraPreview IOException");
-          eventListener.onSnapshotTakenError("IO Error");
-        } finally {
-
-          mCamera.setPreviewCallback(null);
-        }
-      }
-    });
+  /**
+   * @return a buffer for a rotated frame of {@code length} bytes, from a pool started over when
+   * the preview size changes. Only the camera thread uses it.
+   */
+  private byte[] acquireRotationBuffer(final int length) {
+    if (rotationBuffers == null || rotationBufferLength != length) {
+      rotationBuffers = new ObjectPool<>(() -> new byte[length], 1);
+      rotationBufferLength = length;
+    }
+    return rotationBuffers.acquire();
   }
 
-  public void takePicture(final int width, final int height, final int quality){
-    Log.d(TAG, "CameraPreview takePicture width: " + width + ", height: " + height + ", quality: " + quality);
+  public void takePicture(final int width, final int height, final int quality, final int cropWidth){
+    Log.d(TAG, "CameraPreview takePicture width: " + width + ", height: " + height + ", quality: " + quality
+      + ", cropWidth: " + cropWidth);
 
     if(mPreview != null) {
       if(!canTakePicture){
@@ -788,6 +1005,7 @@ public abstract class CameraActivity extends Fragment {
           Camera.Size size = getOptimalPictureSize(width, height, params.getPreviewSize(), params.getSupportedPictureSizes());
           params.setPictureSize(size.width, size.height);
           currentQuality = quality;
+          currentCropWidth = cropWidth;
 
           if(cameraCurrentlyLocked == Camera.CameraInfo.CAMERA_FACING_FRONT && !storeToFile) {
             // The image will be recompressed in the callback
@@ -995,88 +1213,142 @@ public abstract class CameraActivity extends Fragment {
     return large;
   }
 
-  private Runnable postInferenceCallback;
-  private Runnable imageConverter;
+  // Hands the current frame back; read by the inference thread.
+  private volatile Runnable postInferenceCallback;
 
   protected int previewWidth = 0;
   protected int previewHeight = 0;
   private boolean useCamera2API;
-  private boolean isProcessingFrame = false;
-  private byte[][] yuvBytes = new byte[3][];
-  private int[] rgbBytes = null;
-  private int yRowStride;
+  private String camera2Id;
+  private CameraConnectionFragment camera2Fragment;
+  // Written by whichever thread hands the frame back through readyForNextImage().
+  private volatile boolean isProcessingFrame = false;
+  // Camera1 ring, also the frame source unless the Camera2 preview is used.
+  private FrameRing frameRing;
+  // Quality of the snapshot to take from the next preview frame, or -1 if none is pending.
+  private volatile int snapshotQuality = -1;
+  private volatile boolean snapshotRotatePixels;
+  private ObjectPool<byte[]> rotationBuffers;
+  private int rotationBufferLength;
+  // Read by the Camera2 reader thread.
+  private volatile FrameSource frameSource;
+  private long framesDelivered;
+  private long framesDropped;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private YuvFrame currentFrame;
   private Size desiredSize = getDesiredPreviewFrameSize();
   private AutoFitTextureView textureView;
 
-  protected int[] getRgbBytes() {
-    imageConverter.run();
-    return rgbBytes;
-  }
-
-  protected int getLuminanceStride() {
-    return yRowStride;
-  }
-
-  protected byte[] getLuminance() {
-    return yuvBytes[0];
+  /**
+   * @return the whole frame being processed, valid until {@link #readyForNextImage()}.
+   */
+  protected YuvFrame getFrame() {
+    return currentFrame;
   }
 
   /** Callback for android.hardware.Camera API */
   public void onPreviewFrame(final byte[] bytes, final Camera camera) {
     Log.d(TAG, "onPreviewFrame");
-    if (isProcessingFrame) {
-      Log.w(TAG, "Dropping frame!");
+
+    final int quality = snapshotQuality;
+    if (quality >= 0) {
+      // Encoded before the frame is offered, so the buffer can't go back to the camera meanwhile.
+      snapshotQuality = -1;
+      encodeSnapshot(bytes, camera, quality, snapshotRotatePixels);
+    }
+
+    final FrameRing ring = frameRing;
+    if (ring == null) {
+      camera.addCallbackBuffer(bytes);
       return;
     }
+    // Replaces a frame still waiting for the consumer, which goes back to the camera. Buffers of
+    // a previous preview size are dropped.
+    if (ring.offer(bytes)) {
+      processPendingFrame();
+    }
+  }
 
-    try {
-      // Initialize the storage bitmaps once when the resolution is known.
-      if (rgbBytes == null) {
-        Camera.Size previewSize = camera.getParameters().getPreviewSize();
-        previewHeight = previewSize.height;
-        previewWidth = previewSize.width;
-        rgbBytes = new int[previewWidth * previewHeight];
-        onPreviewSizeChosen(new Size(previewSize.width, previewSize.height), 90);
-      }
-    } catch (final Exception e) {
-      Log.e(TAG, "Exception!", e);
+  /**
+   * Hands the freshest frame of the Camera1 ring or the Camera2 reader to
+   * {@link #processImage()}, unless a frame is still being processed or the subclass is not
+   * ready for one.
+   */
+  private void processPendingFrame() {
+    final FrameSource source = frameSource;
+    if (isProcessingFrame || source == null || !isReadyForFrame()) {
       return;
     }
+    final YuvFrame frame = source.poll();
+    if (frame == null) {
+      return;
+    }
+    // Camera1 frames: set up for the resolution when it is first known or was negotiated again.
+    // No frame is being processed here, so nothing reads the old setup.
+    if (frame.getWidth() != previewWidth || frame.getHeight() != previewHeight) {
+      try {
+        previewWidth = frame.getWidth();
+        previewHeight = frame.getHeight();
+        onPreviewSizeChosen(new Size(previewWidth, previewHeight), 90);
+      } catch (final Exception e) {
+        Log.e(TAG, "Exception!", e);
+        source.recycle(frame);
+        return;
+      }
+    }
 
     isProcessingFrame = true;
-    yuvBytes[0] = bytes;
-    yRowStride = previewWidth;
-
-    imageConverter =
-      new Runnable() {
-        @Override
-        public void run() {
-          ImageUtils.convertYUV420SPToARGB8888(bytes, previewWidth, previewHeight, rgbBytes);
-        }
-      };
+    currentFrame = frame;
 
+    // Runs once, whichever thread gets to it: a buffer handed back twice would be filled twice.
+    final AtomicBoolean released = new AtomicBoolean();
     postInferenceCallback =
       new Runnable() {
         @Override
         public void run() {
-          camera.addCallbackBuffer(bytes);
-          isProcessingFrame = false;
+          if (released.compareAndSet(false, true)) {
+            source.recycle(frame);
+            isProcessingFrame = false;
+          }
         }
       };
     processImage();
   }
 
-  protected void fillBytes(final Image.Plane[] planes, final byte[][] yuvBytes) {
-    // Because of the variable row stride it's not possible to know in
-    // advance the actual necessary dimensions of the yuv planes.
-    for (int i = 0; i < planes.length; ++i) {
-      final ByteBuffer buffer = planes[i].getBuffer();
-      if (yuvBytes[i] == null) {
-        Log.d(TAG,"Initializing buffer "+i+" at size "+buffer.capacity());
-        yuvBytes[i] = new byte[buffer.capacity()];
-      }
-      buffer.get(yuvBytes[i]);
+  /**
+   * @return false while the subclass can't take a frame; frames then wait in the frame source,
+   * newest first, until {@link #onReadyForFrame()}.
+   */
+  protected boolean isReadyForFrame() {
+    return true;
+  }
+
+  /**
+   * Called from any thread once a frame can be processed again, by subclasses when they are
+   * ready and by the Camera2 reader when a frame arrives. Processes the waiting frame right away
+   * instead of waiting for the next Camera1 preview callback.
+   */
+  protected void onReadyForFrame() {
+    mainHandler.post(this::processPendingFrame);
+  }
+
+  /**
+   * @return frame and inference counters for {@code getStats}.
+   */
+  public JSONObject getStats() throws JSONException {
+    final FrameSource source = frameSource;
+    long delivered = framesDelivered;
+    long dropped = framesDropped;
+    if (source != null) {
+      delivered += source.getDelivered();
+      dropped += source.getDropped();
     }
+    JSONObject stats = new JSONObject();
+    stats.put("cameraApi", useCamera2API ? "camera2" : "camera1");
+    stats.put("previewBuffers", source != null ? source.getSize() : previewBuffers);
+    stats.put("framesDelivered", delivered);
+    stats.put("framesDropped", dropped);
+    return stats;
   }
 
 //  protected void showFrameInfo(String frameInfo) {
@@ -1104,13 +1376,13 @@ public abstract class CameraActivity extends Fragment {
     }
   }
 
-  private Handler handler;
-  private HandlerThread handlerThread;
-
-  protected synchronized void runInBackground(final Runnable r) {
-    if (handler != null) {
-      handler.post(r);
-    }
+  /**
+   * Runs {@code r} on the process-wide {@link DetectionExecutor}.
+   *
+   * @return false if its queue is full and {@code r} was dropped.
+   */
+  protected boolean runInBackground(final Runnable r) {
+    return DetectionExecutor.get().execute(r);
   }
 
   private boolean debug = false;
@@ -1120,13 +1392,41 @@ public abstract class CameraActivity extends Fragment {
   }
 
   protected void readyForNextImage() {
-    if (postInferenceCallback != null) {
-      postInferenceCallback.run();
+    final Runnable release = postInferenceCallback;
+    if (release != null) {
+      release.run();
     }
   }
 
+  /**
+   * Takes the current frame over from {@link #readyForNextImage()}, for work that outlives
+   * {@link #processImage()}: the frame is handed back when the returned callback runs, on any
+   * thread, and no later frame is processed before.
+   */
+  protected Runnable retainFrame() {
+    final Runnable release = postInferenceCallback;
+    postInferenceCallback = null;
+    return release;
+  }
+
   protected abstract void processImage();
 
+  /**
+   * @return the width and height of the model input, or null to size the preview for the view
+   * alone.
+   */
+  protected Size getModelInputSize() {
+    return null;
+  }
+
+  /**
+   * @param orientation Clockwise rotation from the frame to the model input.
+   * @return the region of a {@code w} x {@code h} frame the detector reads.
+   */
+  protected Rect getDetectionRoi(final int w, final int h, final int orientation) {
+    return new Rect(0, 0, w, h);
+  }
+
   protected abstract void onPreviewSizeChosen(final Size size, final int rotation);
 
   protected abstract int getLayoutId();
@@ -79,6 +79,8 @@ public class CameraConnectionFragment extends Fragment {
   /** The layout identifier to inflate for this Fragment. */
   private final int layout;
   private String appResourcesPackage;
+  /** Number of images the preview {@link ImageReader} can hand out at once. */
+  private int maxImages = 3;
 
   private final ConnectionCallback cameraConnectionCallback;
   private final CameraCaptureSession.CaptureCallback captureCallback =
@@ -306,6 +308,22 @@ public class CameraConnectionFragment extends Fragment {
     this.cameraId = cameraId;
   }
 
+  /**
+   * Closes and opens the camera again, so the preview size is chosen again. Must be called on
+   * the UI thread while the fragment is resumed.
+   */
+  public void reopenCamera() {
+    if (null == cameraDevice || !textureView.isAvailable()) {
+      return;
+    }
+    closeCamera();
+    openCamera(textureView.getWidth(), textureView.getHeight());
+  }
+
+  public void setMaxImages(int maxImages) {
+    this.maxImages = maxImages;
+  }
+
   /** Sets up member variables related to camera. */
   private void setUpCameraOutputs() {
     final Activity activity = getActivity();
@@ -321,11 +339,12 @@ public class CameraConnectionFragment extends Fragment {
       // Danger, W.R.! Attempting to use too large a preview size could  exceed the camera
       // bus' bandwidth limitation, resulting in gorgeous previews but the storage of
       // garbage capture data.
+      final Size[] choices = map.getOutputSizes(SurfaceTexture.class);
       previewSize =
-          chooseOptimalSize(
-              map.getOutputSizes(SurfaceTexture.class),
-              inputSize.getWidth(),
-              inputSize.getHeight());
+          cameraConnectionCallback.choosePreviewSize(
+              choices,
+              chooseOptimalSize(choices, inputSize.getWidth(), inputSize.getHeight()),
+              sensorOrientation);
 
       // We fit the aspect ratio of TextureView to the size of preview we picked.
       final int orientation = getResources().getConfiguration().orientation;
@@ -378,6 +397,8 @@ public class CameraConnectionFragment extends Fragment {
         cameraDevice = null;
       }
       if (null != previewReader) {
+        // Frames still being read must be given back before the reader frees their memory.
+        cameraConnectionCallback.onPreviewClosing();
         previewReader.close();
         previewReader = null;
       }
@@ -428,7 +449,7 @@ public class CameraConnectionFragment extends Fragment {
       // Create the reader for the preview frames.
       previewReader =
           ImageReader.newInstance(
-              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+              previewSize.getWidth(), previewSize.getHeight(), ImageFormat.YUV_420_888, maxImages);
 
       previewReader.setOnImageAvailableListener(imageListener, backgroundHandler);
       previewRequestBuilder.addTarget(previewReader.getSurface());
@@ -515,7 +536,18 @@ public class CameraConnectionFragment extends Fragment {
    * known.
    */
   public interface ConnectionCallback {
+    /**
+     * @param choices           Sizes the camera supports for the preview.
+     * @param optimal           Size picked for the view from {@code choices}.
+     * @param sensorOrientation Clockwise rotation of the sensor from the natural orientation.
+     * @return the preview size to open the camera with, one of {@code choices}.
+     */
+    Size choosePreviewSize(Size[] choices, Size optimal, int sensorOrientation);
+
     void onPreviewSizeChosen(Size size, int cameraRotation);
+
+    /** Called before the preview {@link ImageReader} is closed. */
+    void onPreviewClosing();
   }
 
   /** Compares two {@code Size}s based on their areas. */
@@ -9,6 +9,7 @@ import android.hardware.Camera;
 import android.hardware.camera2.CameraAccessException;
 import android.hardware.camera2.CameraCharacteristics;
 import android.hardware.camera2.CameraManager;
+import android.util.Base64;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.util.Size;
@@ -17,16 +18,26 @@ import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.webkit.WebResourceResponse;
 import android.widget.FrameLayout;
 
+import androidx.webkit.WebViewAssetLoader;
+
+import com.cordovaplugintflite.tflite.ClassifierCache;
+
 import org.apache.cordova.CallbackContext;
 import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.CordovaPluginPathHandler;
 import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -69,6 +80,14 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
   private static final String SET_WHITE_BALANCE_MODE_ACTION = "setWhiteBalanceMode";
   private static final String SET_BACK_BUTTON_CALLBACK = "onBackButton";
   private static final String GET_CAMERA_CHARACTERISTICS_ACTION = "getCameraCharacteristics";
+  private static final String GET_STATS_ACTION = "getStats";
+
+  // How captures cross the bridge: a Base64 string, an ArrayBuffer, or a file:// URL.
+  private static final String TRANSPORT_BASE64 = "base64";
+  private static final String TRANSPORT_ARRAY_BUFFER = "arraybuffer";
+  private static final String TRANSPORT_URL = "url";
+  // Cache subdirectory of the url transport, and the origin path it is served under.
+  private static final String RESULTS_PATH = "cpcp_results";
 
   private static final int CAM_REQ_CODE = 0;
   private static final int VID_REQ_CODE = 1;
@@ -87,6 +106,12 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
   private CameraActivity fragment;
   private CallbackContext takePictureCallbackContext;
   private CallbackContext takeSnapshotCallbackContext;
+  private String takePictureTransport = TRANSPORT_BASE64;
+  private String takeSnapshotTransport = TRANSPORT_BASE64;
+  private ResultStore resultStore;
+  // Size of the latest capture, and of what carried it over the bridge.
+  private volatile int lastResultImageBytes;
+  private volatile int lastResultPayloadBytes;
   private CallbackContext startRecordVideoCallbackContext;
   private CallbackContext stopRecordVideoCallbackContext;
   private CallbackContext setFocusCallbackContext;
@@ -123,6 +148,14 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
           args.getBoolean(10),
           args.getBoolean(11),
           args.getString(12),
+          args.optJSONArray(14),
+          args.optString(15, "auto"),
+          args.optInt(16, 0),
+          args.optInt(17, FrameRing.DEFAULT_SIZE),
+          args.optBoolean(18, false),
+          (float) args.optDouble(19, InferenceScheduler.DEFAULT_MAX_RATE),
+          (float) args.optDouble(20, 0),
+          args.optBoolean(21, false),
           callbackContext
         );
 //        JSONObject jsonObject = data.getJSONObject(0);
@@ -134,9 +167,9 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
         return true;
       }
     } else if (TAKE_PICTURE_ACTION.equals(action)) {
-      return takePicture(args.getInt(0), args.getInt(1), args.getInt(2), callbackContext);
+      return takePicture(args.getInt(0), args.getInt(1), args.getInt(2), args.optInt(3, 0), args.optString(4, TRANSPORT_BASE64), callbackContext);
     } else if (TAKE_SNAPSHOT_ACTION.equals(action)) {
-      return takeSnapshot(args.getInt(0), callbackContext);
+      return takeSnapshot(args.getInt(0), args.optBoolean(1, false), args.optString(2, TRANSPORT_BASE64), callbackContext);
     }else if (START_RECORD_VIDEO_ACTION.equals(action)) {
       if ( cordova.hasPermission(videoPermissions[0]) && cordova.hasPermission(videoPermissions[1])) {
         return startRecordVideo(args.getString(0), args.getInt(1), args.getInt(2), args.getInt(3), args.getBoolean(4), callbackContext);
@@ -208,6 +241,8 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
       return getSupportedColorEffects(callbackContext);
     } else if (GET_CAMERA_CHARACTERISTICS_ACTION.equals(action)) {
       return getCameraCharacteristics(callbackContext);
+    } else if (GET_STATS_ACTION.equals(action)) {
+      return getStats(callbackContext);
     }
 
     return false;
@@ -237,6 +272,14 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
         this.execArgs.getBoolean(10),
         this.execArgs.getBoolean(11),
         this.execArgs.getString(12),
+        this.execArgs.optJSONArray(14),
+        this.execArgs.optString(15, "auto"),
+        this.execArgs.optInt(16, 0),
+        this.execArgs.optInt(17, FrameRing.DEFAULT_SIZE),
+        this.execArgs.optBoolean(18, false),
+        (float) this.execArgs.optDouble(19, InferenceScheduler.DEFAULT_MAX_RATE),
+        (float) this.execArgs.optDouble(20, 0),
+        this.execArgs.optBoolean(21, false),
         this.execCallback
       );
     } else if(requestCode == VID_REQ_CODE){
@@ -311,6 +354,14 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     boolean disableExifHeaderStripping,
     boolean storeToFile,
     String overlay,
+    JSONArray detectClasses,
+    String delegate,
+    int numThreads,
+    int previewBuffers,
+    boolean useCamera2,
+    float maxDetectionRate,
+    float minSharpness,
+    boolean detailedEvents,
     CallbackContext callbackContext
   ) {
     Log.d(TAG, "start camera action");
@@ -349,6 +400,18 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     fragment.setRect(computedX, computedY, computedWidth, computedHeight);
 
     fragment.setOverlay(overlay);
+    if (detectClasses != null) {
+      List<String> classes = new ArrayList<String>();
+      for (int i = 0; i < detectClasses.length(); i++) {
+        classes.add(detectClasses.optString(i));
+      }
+      fragment.setDetectClasses(classes);
+    }
+    fragment.setDelegate(delegate, numThreads);
+    fragment.setPreviewBuffers(previewBuffers);
+    fragment.setUseCamera2(useCamera2);
+    fragment.setMaxDetectionRate(maxDetectionRate);
+    fragment.setSharpness(minSharpness, detailedEvents);
     if (!"selfie".equals(overlay)) {
       double h0 = computedWidth / 1.58;
       double y0 = (computedHeight - h0) / 2;
@@ -425,24 +488,28 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     startCameraCallbackContext.sendPluginResult(pluginResult);
   }
 
-  private boolean takeSnapshot(int quality, CallbackContext callbackContext) {
+  private boolean takeSnapshot(int quality, boolean rotatePixels, String transport, CallbackContext callbackContext) {
     if(this.hasView(callbackContext) == false){
       return true;
     }
 
     takeSnapshotCallbackContext = callbackContext;
+    takeSnapshotTransport = transport;
 
-    fragment.takeSnapshot(quality);
+    fragment.takeSnapshot(quality, rotatePixels);
     return true;
   }
 
-  public void onSnapshotTaken(String originalPicture) {
+  public void onSnapshotTaken(byte[] picture) {
     Log.d(TAG, "returning snapshot");
 
-    JSONArray data = new JSONArray();
-    data.put(originalPicture);
-
-    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, data);
+    PluginResult pluginResult;
+    try {
+      pluginResult = toResult(picture, takeSnapshotTransport);
+    } catch (IOException e) {
+      onSnapshotTakenError("IO Error when storing the snapshot");
+      return;
+    }
     pluginResult.setKeepCallback(true);
     takeSnapshotCallbackContext.sendPluginResult(pluginResult);
     takeSnapshotCallbackContext = null;
@@ -454,22 +521,37 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     takeSnapshotCallbackContext = null;
   }
 
-  private boolean takePicture(int width, int height, int quality, CallbackContext callbackContext) {
+  private boolean takePicture(int width, int height, int quality, int cropWidth, String transport, CallbackContext callbackContext) {
     if(this.hasView(callbackContext) == false){
       return true;
     }
     takePictureCallbackContext = callbackContext;
+    takePictureTransport = transport;
 
-    fragment.takePicture(width, height, quality);
+    fragment.takePicture(width, height, quality, cropWidth);
 
     return true;
   }
 
-  public void onPictureTaken(String originalPicture) {
+  public void onPictureTaken(byte[] picture) {
     Log.d(TAG, "returning picture");
 
+    PluginResult pluginResult;
+    try {
+      pluginResult = toResult(picture, takePictureTransport);
+    } catch (IOException e) {
+      onPictureTakenError("IO Error when storing the picture");
+      return;
+    }
+    pluginResult.setKeepCallback(fragment.tapToTakePicture);
+    takePictureCallbackContext.sendPluginResult(pluginResult);
+  }
+
+  public void onPictureStored(String path) {
+    Log.d(TAG, "returning picture path");
+
     JSONArray data = new JSONArray();
-    data.put(originalPicture);
+    data.put(path);
 
     PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, data);
     pluginResult.setKeepCallback(fragment.tapToTakePicture);
@@ -481,6 +563,78 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     takePictureCallbackContext.error(message);
   }
 
+  /**
+   * Wraps a capture in the transport its caller asked for, and records the payload size.
+   */
+  private PluginResult toResult(byte[] picture, String transport) throws IOException {
+    lastResultImageBytes = picture.length;
+    if (TRANSPORT_ARRAY_BUFFER.equals(transport)) {
+      // Cordova carries binary results over the bridge as Base64 too, but the page gets an
+      // ArrayBuffer and no string copy of it.
+      lastResultPayloadBytes = ResultPayload.binaryBytes(picture.length);
+      return new PluginResult(PluginResult.Status.OK, picture);
+    }
+    String value;
+    if (TRANSPORT_URL.equals(transport)) {
+      value = getResultStore().put(picture);
+    } else {
+      value = Base64.encodeToString(picture, Base64.NO_WRAP);
+    }
+    JSONArray data = new JSONArray();
+    data.put(value);
+    lastResultPayloadBytes = ResultPayload.stringBytes(value);
+    return new PluginResult(PluginResult.Status.OK, data);
+  }
+
+  private synchronized ResultStore getResultStore() {
+    if (resultStore == null) {
+      resultStore = new ResultStore(new File(cordova.getActivity().getCacheDir(), RESULTS_PATH),
+        resultBaseUrl());
+    }
+    return resultStore;
+  }
+
+  /**
+   * @return the URL prefix under which {@link #getPathHandler()} serves stored captures on the
+   * page origin, or null for file:// URLs when the page itself is served from file://.
+   */
+  private String resultBaseUrl() {
+    if (preferences.getBoolean("AndroidInsecureFileModeEnabled", false)) {
+      return null;
+    }
+    final String scheme = preferences.getString("scheme", "https");
+    final String hostname = preferences.getString("hostname", "localhost");
+    return scheme + "://" + hostname + "/" + RESULTS_PATH + "/";
+  }
+
+  /**
+   * Serves the captures returned with the url transport from the page origin, so the page can
+   * load them without file:// access.
+   */
+  @Override
+  public CordovaPluginPathHandler getPathHandler() {
+    return new CordovaPluginPathHandler(new WebViewAssetLoader.PathHandler() {
+      @Override
+      public WebResourceResponse handle(String path) {
+        if (!path.startsWith(RESULTS_PATH + "/")) {
+          return null;
+        }
+        File file;
+        synchronized (CameraPreview.this) {
+          file = resultStore == null ? null : resultStore.find(path.substring(RESULTS_PATH.length() + 1));
+        }
+        if (file == null) {
+          return null;
+        }
+        try {
+          return new WebResourceResponse("image/jpeg", null, new FileInputStream(file));
+        } catch (FileNotFoundException e) {
+          return null;
+        }
+      }
+    });
+  }
+
   private boolean startRecordVideo(String camera, int width, int height, int quality, boolean withFlash, CallbackContext callbackContext) {
     if(this.hasView(callbackContext) == false){
       return true;
@@ -547,6 +701,12 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
 //    startCameraCallbackContext.success(object);
   }
 
+  public void onObjectDetected(JSONObject detection) {
+    PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, detection);
+    pluginResult.setKeepCallback(true);
+    startCameraCallbackContext.sendPluginResult(pluginResult);
+  }
+
   public void onStopRecordVideoError(String err) {
     Log.d(TAG, "onStopRecordVideo error");
 
@@ -868,6 +1028,23 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
   }
 
 
+  private boolean getStats(CallbackContext callbackContext) {
+    if (fragment == null) {
+      callbackContext.error("No Camera");
+      return true;
+    }
+
+    try {
+      JSONObject stats = fragment.getStats();
+      stats.put("resultImageBytes", lastResultImageBytes);
+      stats.put("resultPayloadBytes", lastResultPayloadBytes);
+      callbackContext.success(stats);
+    } catch (JSONException e) {
+      callbackContext.error(e.getMessage());
+    }
+    return true;
+  }
+
   private boolean getZoom(CallbackContext callbackContext) {
     if(this.hasCamera(callbackContext) == false){
       return true;
@@ -1052,6 +1229,20 @@ public class CameraPreview extends CordovaPlugin implements CameraActivity.Camer
     return true;
   }
 
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+    // Classifiers and the detection thread outlive stopCamera so the next start reuses them;
+    // release them with the plugin.
+    DetectionExecutor.shutdown();
+    ClassifierCache.clear();
+    synchronized (this) {
+      if (resultStore != null) {
+        resultStore.clear();
+      }
+    }
+  }
+
   private boolean stopCamera(CallbackContext callbackContext) {
     if(webViewParent != null) {
       cordova.getActivity().runOnUiThread(new Runnable() {
@@ -0,0 +1,120 @@
+package com.cordovaplugintflite;
+
+import android.os.Process;
+
+import com.cordovaplugintflite.env.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide thread for detection work outside the frame pipeline: delegate benchmarks and
+ * interpreter settings. It replaces a thread per resumed fragment.
+ * <p>
+ * Tasks run one at a time, in order, from a queue of at most {@link #QUEUE_CAPACITY}. A task that
+ * doesn't fit is rejected rather than queued behind work that is already late. The thread starts
+ * with the first task and exits after {@link #KEEP_ALIVE_SECONDS} idle, so a paused camera holds
+ * no thread. {@link #shutdown()} ends it for good when the plugin goes away.
+ * <p>
+ * Detection threads, including the pipeline stages started with {@link #newThread}, run at
+ * {@link #THREAD_PRIORITY}: just above background work and below the main thread, which
+ * delivers the Camera1 preview callbacks and draws the overlay, so detection never preempts
+ * them. Threads the interpreter starts inherit it.
+ */
+public final class DetectionExecutor {
+  private static final Logger LOGGER = new Logger();
+
+  // Android priorities are nice values: BACKGROUND is 10, the main thread 0 and DISPLAY -4.
+  public static final int THREAD_PRIORITY =
+    Process.THREAD_PRIORITY_BACKGROUND + Process.THREAD_PRIORITY_MORE_FAVORABLE;
+  static final int QUEUE_CAPACITY = 8;
+  static final long KEEP_ALIVE_SECONDS = 30;
+
+  private static DetectionExecutor instance;
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicLong rejected = new AtomicLong();
+  // Time the latest task waited in the queue, and the longest wait so far.
+  private volatile long lastWaitMs;
+  private volatile long maxWaitMs;
+
+  private DetectionExecutor() {
+    executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> newThread(runnable, "detection"));
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * @return the executor of this process, started again after {@link #shutdown()}.
+   */
+  public static synchronized DetectionExecutor get() {
+    if (instance == null) {
+      instance = new DetectionExecutor();
+    }
+    return instance;
+  }
+
+  /**
+   * Lets the queued tasks finish, then ends the thread; the next {@link #get()} starts over.
+   */
+  public static synchronized void shutdown() {
+    if (instance != null) {
+      instance.executor.shutdown();
+      instance = null;
+    }
+  }
+
+  /**
+   * @return a thread that runs {@code runnable} at {@link #THREAD_PRIORITY}.
+   */
+  public static Thread newThread(final Runnable runnable, final String name) {
+    final Thread thread = new Thread(() -> {
+      Process.setThreadPriority(THREAD_PRIORITY);
+      runnable.run();
+    }, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * @return false if the queue is full or the executor shut down, and {@code task} was dropped.
+   */
+  public boolean execute(final Runnable task) {
+    final long queuedAt = System.nanoTime();
+    try {
+      executor.execute(() -> {
+        final long waitMs = (System.nanoTime() - queuedAt) / 1000000;
+        lastWaitMs = waitMs;
+        if (waitMs > maxWaitMs) {
+          maxWaitMs = waitMs;
+        }
+        task.run();
+      });
+      return true;
+    } catch (final RejectedExecutionException e) {
+      rejected.incrementAndGet();
+      LOGGER.w("Detection task rejected, %d queued", executor.getQueue().size());
+      return false;
+    }
+  }
+
+  public int getQueueDepth() {
+    return executor.getQueue().size();
+  }
+
+  public long getLastWaitMs() {
+    return lastWaitMs;
+  }
+
+  public long getMaxWaitMs() {
+    return maxWaitMs;
+  }
+
+  public long getRejected() {
+    return rejected.get();
+  }
+}
@@ -0,0 +1,295 @@
+package com.cordovaplugintflite;
+
+import com.cordovaplugintflite.env.Logger;
+import com.cordovaplugintflite.env.Mailbox;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs detection as three stages, each on its own thread: preprocess, invoke and decode.
+ * Consecutive frames overlap, so frame N+1 is preprocessed while frame N is in the interpreter
+ * and frame N-1 is decoded.
+ * <p>
+ * Model inputs and outputs are double-buffered. Preprocessing fills one input while the
+ * interpreter reads the other, and the interpreter writes one output while the other is
+ * decoded. A buffer goes back to its free queue once the next stage is done with it, and a
+ * stage waits while none is free.
+ * <p>
+ * A frame still takes the sum of the stages from submission to result. Frames complete at the
+ * rate of the slowest stage instead of the sum.
+ * <p>
+ * Only the newest submitted job waits for the preprocess stage. A newer job replaces it and it
+ * is discarded. The stage threads run at {@link DetectionExecutor#THREAD_PRIORITY} until
+ * {@link #shutdown()}, across as many camera pauses as the owner keeps the pipeline.
+ *
+ * @param <J> A frame and what its stages need to know about it.
+ * @param <I> Model input buffer.
+ * @param <O> Model output buffers.
+ */
+public class DetectionPipeline<J, I, O> {
+  private static final Logger LOGGER = new Logger();
+
+  public interface Stages<J, I, O> {
+    /** Fills {@code input} for the job, on the preprocess thread. */
+    void preprocess(J job, I input);
+
+    /** Runs the model, on the invoke thread. */
+    void invoke(I input, O output);
+
+    /** Reads the job's results from {@code output}, on the decode thread. */
+    void decode(J job, O output);
+
+    /** Gives back a job that will not be decoded: replaced, failed, or left at shutdown. */
+    void discard(J job);
+  }
+
+  private static final class Submitted<J> {
+    final J job;
+    final long at = System.nanoTime();
+
+    Submitted(final J job) {
+      this.job = job;
+    }
+  }
+
+  private static final class Slot<J, B> {
+    final J job;
+    final B buffer;
+
+    Slot(final J job, final B buffer) {
+      this.job = job;
+      this.buffer = buffer;
+    }
+  }
+
+  private final Stages<J, I, O> stages;
+  private final Mailbox<Submitted<J>> pending = new Mailbox<>();
+  private final Semaphore submitted = new Semaphore(0);
+  private final BlockingQueue<I> freeInputs;
+  private final BlockingQueue<O> freeOutputs;
+  private final BlockingQueue<Slot<J, I>> filledInputs;
+  private final BlockingQueue<Slot<J, O>> filledOutputs;
+  private final Thread[] threads;
+  private volatile boolean running = true;
+
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong discarded = new AtomicLong();
+  // Time the latest job waited for the preprocess stage, and the duration of each stage.
+  private volatile long waitMs;
+  private volatile long preprocessMs;
+  private volatile long invokeMs;
+  private volatile long decodeMs;
+
+  /**
+   * Starts the stage threads.
+   *
+   * @param inputs  Model input buffers, two to double-buffer.
+   * @param outputs Model output buffers, two to double-buffer.
+   */
+  public DetectionPipeline(final String name, final Stages<J, I, O> stages,
+                           final List<I> inputs, final List<O> outputs) {
+    this.stages = stages;
+    freeInputs = new ArrayBlockingQueue<>(inputs.size(), false, inputs);
+    freeOutputs = new ArrayBlockingQueue<>(outputs.size(), false, outputs);
+    filledInputs = new ArrayBlockingQueue<>(inputs.size());
+    filledOutputs = new ArrayBlockingQueue<>(outputs.size());
+    threads = new Thread[]{
+      DetectionExecutor.newThread(this::preprocessLoop, name + "-preprocess"),
+      DetectionExecutor.newThread(this::invokeLoop, name + "-invoke"),
+      DetectionExecutor.newThread(this::decodeLoop, name + "-decode")
+    };
+    for (Thread thread : threads) {
+      thread.start();
+    }
+  }
+
+  /**
+   * Hands a job to the preprocess stage, replacing the one still waiting for it.
+   */
+  public void submit(final J job) {
+    if (!running) {
+      discard(job);
+      return;
+    }
+    final Submitted<J> replaced = pending.offer(new Submitted<>(job));
+    if (replaced != null) {
+      discard(replaced.job);
+    }
+    submitted.release();
+    if (!running) {
+      // shutdown() ran during the offer and may have missed this job.
+      discardPending();
+    }
+  }
+
+  /**
+   * Discards the job still waiting for the preprocess stage, e.g. before its camera closes.
+   * Jobs past preprocessing no longer hold their frame and complete.
+   */
+  public void flush() {
+    discardPending();
+  }
+
+  /**
+   * @return 1 if a job waits for the preprocess stage, else 0, plus the jobs between stages.
+   */
+  public int getQueueDepth() {
+    return (pending.isEmpty() ? 0 : 1) + filledInputs.size() + filledOutputs.size();
+  }
+
+  public long getWaitMs() {
+    return waitMs;
+  }
+
+  /**
+   * Stops the stage threads without waiting for them: a stage already running finishes its
+   * job, and every job not decoded by then is discarded.
+   */
+  public void shutdown() {
+    running = false;
+    for (Thread thread : threads) {
+      thread.interrupt();
+    }
+    discardPending();
+  }
+
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  public long getDiscarded() {
+    return discarded.get();
+  }
+
+  public long getPreprocessMs() {
+    return preprocessMs;
+  }
+
+  public long getInvokeMs() {
+    return invokeMs;
+  }
+
+  public long getDecodeMs() {
+    return decodeMs;
+  }
+
+  // Each loop keeps the job it holds between blocking calls in `held`. shutdown() interrupts the
+  // threads, and a stage interrupted while holding a job discards it, as nothing else can.
+
+  private void preprocessLoop() {
+    J held = null;
+    try {
+      while (running) {
+        // The buffer first, so the job taken is the newest one once there is room for it.
+        final I input = freeInputs.take();
+        Submitted<J> next;
+        do {
+          submitted.acquire();
+          submitted.drainPermits();
+          next = pending.take();
+        } while (next == null);
+        final J job = next.job;
+        held = job;
+        final long start = System.nanoTime();
+        waitMs = (start - next.at) / 1000000;
+        try {
+          stages.preprocess(job, input);
+        } catch (final RuntimeException e) {
+          LOGGER.e(e, "Preprocessing failed");
+          held = null;
+          discard(job);
+          freeInputs.put(input);
+          continue;
+        }
+        preprocessMs = (System.nanoTime() - start) / 1000000;
+        filledInputs.put(new Slot<>(job, input));
+        held = null;
+      }
+    } catch (final InterruptedException e) {
+      // Shut down.
+    }
+    if (held != null) {
+      discard(held);
+    }
+    discardPending();
+    discardAll(filledInputs);
+  }
+
+  private void invokeLoop() {
+    J held = null;
+    try {
+      while (running) {
+        final Slot<J, I> in = filledInputs.take();
+        held = in.job;
+        final O output = freeOutputs.take();
+        final long start = System.nanoTime();
+        try {
+          stages.invoke(in.buffer, output);
+        } catch (final RuntimeException e) {
+          LOGGER.e(e, "Inference failed");
+          held = null;
+          discard(in.job);
+          freeInputs.put(in.buffer);
+          freeOutputs.put(output);
+          continue;
+        }
+        invokeMs = (System.nanoTime() - start) / 1000000;
+        freeInputs.put(in.buffer);
+        filledOutputs.put(new Slot<>(in.job, output));
+        held = null;
+      }
+    } catch (final InterruptedException e) {
+      // Shut down.
+    }
+    if (held != null) {
+      discard(held);
+    }
+    discardAll(filledInputs);
+    // The decode stage may have stopped before this stage's last output.
+    discardAll(filledOutputs);
+  }
+
+  private void decodeLoop() {
+    try {
+      while (running) {
+        final Slot<J, O> out = filledOutputs.take();
+        final long start = System.nanoTime();
+        try {
+          stages.decode(out.job, out.buffer);
+          decodeMs = (System.nanoTime() - start) / 1000000;
+          completed.incrementAndGet();
+        } catch (final RuntimeException e) {
+          LOGGER.e(e, "Decoding failed");
+          discard(out.job);
+        }
+        freeOutputs.put(out.buffer);
+      }
+    } catch (final InterruptedException e) {
+      // Shut down.
+    }
+    discardAll(filledOutputs);
+  }
+
+  private void discardPending() {
+    final Submitted<J> next = pending.take();
+    if (next != null) {
+      discard(next.job);
+    }
+  }
+
+  private <B> void discardAll(final BlockingQueue<Slot<J, B>> queue) {
+    Slot<J, B> slot;
+    while ((slot = queue.poll()) != null) {
+      discard(slot.job);
+    }
+  }
+
+  private void discard(final J job) {
+    discarded.incrementAndGet();
+    stages.discard(job);
+  }
+}
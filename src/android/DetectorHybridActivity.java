@@ -1,5 +1,6 @@
 package com.cordovaplugintflite;
 
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Bitmap.Config;
 import android.graphics.Canvas;
@@ -7,9 +8,12 @@ import android.graphics.Color;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Paint.Style;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.PowerManager;
 import android.os.SystemClock;
 import android.util.Log;
 import android.util.Size;
@@ -24,13 +28,24 @@ import com.cordovaplugintflite.customview.OverlayView.DrawCallback;
 import com.cordovaplugintflite.env.BorderedText;
 import com.cordovaplugintflite.env.ImageUtils;
 import com.cordovaplugintflite.env.Logger;
+import com.cordovaplugintflite.env.MotionGate;
+import com.cordovaplugintflite.env.ObjectPool;
+import com.cordovaplugintflite.env.Sharpness;
+import com.cordovaplugintflite.env.YuvConverter;
+import com.cordovaplugintflite.env.YuvFrame;
 import com.cordovaplugintflite.tflite.Classifier;
-import com.cordovaplugintflite.tflite.YoloV4Classifier;
+import com.cordovaplugintflite.tflite.ClassifierCache;
+import com.cordovaplugintflite.tflite.DelegateSelector;
 import com.cordovaplugintflite.tracking.MultiBoxTracker;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 
 /**
@@ -40,7 +55,6 @@ import java.util.Objects;
 public class DetectorHybridActivity extends CameraActivity {
   private static final Logger LOGGER = new Logger();
 
-  private static final int TF_OD_API_INPUT_SIZE = 416;
   private static final boolean TF_OD_API_IS_QUANTIZED = true;
   private static final String TF_OD_API_MODEL_FILE = "yolov4full.tflite";
 
@@ -49,7 +63,18 @@ public class DetectorHybridActivity extends CameraActivity {
   private static final DetectorMode MODE = DetectorMode.TF_OD_API;
   private static final float MINIMUM_CONFIDENCE_TF_OD_API = 0.5f;
   private static final boolean MAINTAIN_ASPECT = false;
+  // Off until DecodeBenchmark shows a speedup on a device; on the JVM decode is no faster.
+  private static final boolean USE_FAST_MATH = false;
+  // Sample the model input straight from the camera frame instead of going through bitmaps.
+  private static final boolean USE_FUSED_INPUT = true;
+  // Re-emit the last detection while the card area stays still instead of running the model.
+  private static final boolean USE_MOTION_GATE = true;
+  // Mean absolute luma difference, out of 255, below which the card area counts as still.
+  private static final float MOTION_THRESHOLD = 4.0f;
+  // Past this age a detection is inferred again even if nothing moved.
+  private static final long MAX_CACHED_DETECTION_AGE_MS = 2000;
   //  private static final Size DESIRED_PREVIEW_SIZE = new Size(640, 480);
+  // Camera2 view size target; the preview is the smallest size up to it that gives the model its full input.
   private static final Size DESIRED_PREVIEW_SIZE = new Size(1280, 960);
   //  private static final Size DESIRED_PREVIEW_SIZE = new Size(1280, 960);
   private static final boolean SAVE_PREVIEW_BITMAP = false;
@@ -57,14 +82,27 @@ public class DetectorHybridActivity extends CameraActivity {
   OverlayView trackingOverlay;
   private Integer sensorOrientation;
 
-  private Classifier detector;
+  // Replaced by the delegate benchmark on the inference thread.
+  private volatile Classifier detector;
 
-  private long lastProcessingTimeMs;
-  private Bitmap rgbFrameBitmap = null;
-  private Bitmap croppedBitmap = null;
+  private volatile long lastProcessingTimeMs;
+  // Model inputs of the bitmap path: one is drawn while another may still be inferred.
+  private ObjectPool<Bitmap> croppedBitmaps;
   private Bitmap cropCopyBitmap = null;
 
-  private boolean computingDetection = false;
+  private DetectionPipeline<DetectionJob, Classifier.Inputs, Classifier.Outputs> pipeline;
+  private Classifier pipelineDetector;
+  private volatile boolean benchmarking;
+  private boolean benchmarkPending;
+  private InferenceScheduler scheduler;
+  private final MotionGate motionGate = new MotionGate(MOTION_THRESHOLD);
+  // Last inferred detection, or null if none yet; replaced as a whole by the decode thread.
+  private volatile CachedDetection cachedDetection;
+  // When the cached detection was last re-emitted for a still frame; frame thread only.
+  private long lastReemitMs;
+  private long motionSkips;
+  private long blurSkips;
+  private PowerManager.OnThermalStatusChangedListener thermalListener;
 
   private long timestamp = 0;
 
@@ -80,7 +118,61 @@ public class DetectorHybridActivity extends CameraActivity {
 
   @Override
   public void onPreviewSizeChosen(final Size size, final int rotation) {
+    // Called again whenever the preview is reconfigured to another size.
+    if (tracker == null) {
+      initViews();
+    }
+    if (detector == null && !createDetector()) {
+      return;
+    }
+    if (benchmarkPending) {
+      benchmarkPending = false;
+      benchmarkDelegates();
+    }
+
+    previewWidth = size.getWidth();
+    previewHeight = size.getHeight();
+
+    sensorOrientation = rotation - getScreenOrientation();
+    LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
+
+    LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
+    // The crop matches the model input, whatever size the model was exported with.
+    final int cropWidth = detector.getInputWidth();
+    final int cropHeight = detector.getInputHeight();
+    if (!USE_FUSED_INPUT) {
+      if (croppedBitmaps == null) {
+        croppedBitmaps = new ObjectPool<>(() -> Bitmap.createBitmap(cropWidth, cropHeight, Config.ARGB_8888), 2);
+      }
+    }
+
+    if (sensorOrientation % 90 != 0) {
+      int height = (int) (h0 * previewHeight);
+      int width = Math.min((int) (w0 * previewWidth), (int) (height * 1.58));
+
+      frameToCropTransform =
+        ImageUtils.getTransformationMatrix(
+          width, height,
+          cropWidth, cropHeight,
+          sensorOrientation, MAINTAIN_ASPECT);
+    } else {
+      int width = (int) (h0 * previewWidth);
+      int height = Math.min((int) (w0 * previewHeight), (int) (width * 1.58));
+
+      frameToCropTransform =
+        ImageUtils.getTransformationMatrix(
+          width, height,
+          cropWidth, cropHeight,
+          sensorOrientation, MAINTAIN_ASPECT);
+    }
+
+    cropToFrameTransform = new Matrix();
+    frameToCropTransform.invert(cropToFrameTransform);
+
+    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+  }
 
+  private void initViews() {
     if (!"selfie".equals(overlay)) {
 //      String drawableName = "overlay_card";
 //      String imageViewId = "card_layout";
@@ -102,15 +194,36 @@ public class DetectorHybridActivity extends CameraActivity {
 
     tracker = new MultiBoxTracker(getActivity());
 
-    int cropSize = TF_OD_API_INPUT_SIZE;
+    if (scheduler == null) {
+      scheduler = new InferenceScheduler(maxDetectionRate, InferenceScheduler.SYSTEM_CLOCK);
+      registerThermalListener();
+    }
+
+    trackingOverlay = (OverlayView) getActivity().findViewById(getResources().getIdentifier("tracking_overlay", "id", appResourcesPackage));
+    trackingOverlay.addCallback(
+      new DrawCallback() {
+        @Override
+        public void drawCallback(final Canvas canvas) {
+          tracker.draw(canvas);
+          if (isDebug()) {
+            tracker.drawDebug(canvas);
+          }
+        }
+      });
+  }
+
+  /**
+   * Loads the detector with the backend requested from JS, or the one benchmarked on an earlier
+   * launch; without either it starts on the default backend and benchmarks the others.
+   *
+   * @return false if the model could not be loaded.
+   */
+  private boolean createDetector() {
+    final DelegateSelector.Choice delegateChoice =
+      DelegateSelector.resolve(getActivity(), TF_OD_API_MODEL_FILE, delegate, numThreads);
 
     try {
-      detector =
-        YoloV4Classifier.create(
-          getActivity().getAssets(),
-          TF_OD_API_MODEL_FILE,
-          TF_OD_API_LABELS_FILE,
-          TF_OD_API_IS_QUANTIZED);
+      detector = createDetector(delegateChoice != null ? delegateChoice : DelegateSelector.DEFAULT);
 //            detector = TFLiteObjectDetectionAPIModel.create(
 //                    getAssets(),
 //                    TF_OD_API_MODEL_FILE,
@@ -125,54 +238,163 @@ public class DetectorHybridActivity extends CameraActivity {
           getActivity().getApplicationContext(), "Classifier could not be initialized", Toast.LENGTH_SHORT);
       toast.show();
       getActivity().finish();
+      return false;
     }
 
-    previewWidth = size.getWidth();
-    previewHeight = size.getHeight();
+    // Started with the first frame, once the inference thread runs.
+    benchmarkPending = delegateChoice == null;
+    return true;
+  }
 
-    sensorOrientation = rotation - getScreenOrientation();
-    LOGGER.i("Camera orientation relative to screen canvas: %d", sensorOrientation);
+  @Override
+  protected Size getModelInputSize() {
+    if (detector == null && !createDetector()) {
+      return null;
+    }
+    return new Size(detector.getInputWidth(), detector.getInputHeight());
+  }
 
-    LOGGER.i("Initializing at size %dx%d", previewWidth, previewHeight);
-    rgbFrameBitmap = Bitmap.createBitmap(previewWidth, previewHeight, Config.ARGB_8888);
-    croppedBitmap = Bitmap.createBitmap(cropSize, cropSize, Config.ARGB_8888);
+  private Classifier createDetector(final DelegateSelector.Choice delegateChoice) throws IOException {
+    return ClassifierCache.get(
+      getActivity().getApplicationContext(),
+      TF_OD_API_MODEL_FILE,
+      TF_OD_API_LABELS_FILE,
+      TF_OD_API_IS_QUANTIZED,
+      delegateChoice);
+  }
 
-    if (sensorOrientation % 90 != 0) {
-      int height = (int) (h0 * previewHeight);
-      int width = Math.min((int) (w0 * previewWidth), (int) (height * 1.58));
+  /**
+   * First launch on this device: times the backends on the inference thread, with detection
+   * paused so the frames don't skew the timings, then switches to the winner. Later launches
+   * read the persisted winner instead.
+   */
+  private void benchmarkDelegates() {
+    final Context context = getActivity().getApplicationContext();
+    benchmarking = true;
+    final boolean started = runInBackground(() -> {
+      try {
+        final DelegateSelector.Choice best = DelegateSelector.benchmark(context, TF_OD_API_MODEL_FILE);
+        if (!best.equals(DelegateSelector.DEFAULT) && getActivity() != null) {
+          final Classifier previous = detector;
+          detector = createDetector(best);
+          ClassifierCache.evict(previous);
+        }
+      } catch (final Exception e) {
+        LOGGER.e(e, "Delegate benchmark failed, keeping %s", DelegateSelector.DEFAULT);
+      } finally {
+        benchmarking = false;
+        onReadyForFrame();
+      }
+    });
+    if (!started) {
+      benchmarking = false;
+    }
+  }
 
-      frameToCropTransform =
-        ImageUtils.getTransformationMatrix(
-          width, height,
-          cropSize, cropSize,
-          sensorOrientation, MAINTAIN_ASPECT);
+  /**
+   * @return the card area of the frame, in frame pixels.
+   */
+  @Override
+  protected Rect getDetectionRoi(final int w, final int h, final int orientation) {
+    if (orientation % 90 != 0) {
+      int height = (int) (h0 * h);
+      int y = (int) (y0 * h);
+      int width = Math.min((int) (w0 * w), (int) (height * 1.58));
+      int x = ((int) (w0 * w) - width) / 2;
+      return new Rect(x, y, x + width, y + height);
     } else {
-      int width = (int) (h0 * previewWidth);
-      int height = Math.min((int) (w0 * previewHeight), (int) (width * 1.58));
+      int width = (int) (h0 * w);
+      int x = (int) (y0 * w);
+      int height = Math.min((int) (w0 * h), (int) (width * 1.58));
+      int y = ((int) (w0 * h) - height) / 2;
+      return new Rect(x, y, x + width, y + height);
+    }
+  }
 
-      frameToCropTransform =
-        ImageUtils.getTransformationMatrix(
-          width, height,
-          cropSize, cropSize,
-          sensorOrientation, MAINTAIN_ASPECT);
+  @Override
+  protected boolean isReadyForFrame() {
+    return !benchmarking && (scheduler == null || scheduler.isDue());
+  }
+
+  @Override
+  public void onResume() {
+    super.onResume();
+    if (scheduler != null) {
+      registerThermalListener();
     }
+  }
 
-    cropToFrameTransform = new Matrix();
-    frameToCropTransform.invert(cropToFrameTransform);
+  @Override
+  public void onPause() {
+    unregisterThermalListener();
+    // Hands back the frame still waiting, before the camera goes away; the stage threads stay.
+    if (pipeline != null) {
+      pipeline.flush();
+    }
+    super.onPause();
+  }
 
-    trackingOverlay = (OverlayView) getActivity().findViewById(getResources().getIdentifier("tracking_overlay", "id", appResourcesPackage));
-    trackingOverlay.addCallback(
-      new DrawCallback() {
-        @Override
-        public void drawCallback(final Canvas canvas) {
-          tracker.draw(canvas);
-          if (isDebug()) {
-            tracker.drawDebug(canvas);
-          }
-        }
-      });
+  @Override
+  public void onDestroy() {
+    stopPipeline();
+    super.onDestroy();
+  }
 
-    tracker.setFrameConfiguration(previewWidth, previewHeight, sensorOrientation);
+  /**
+   * Lets the scheduler back off as the device heats up; thermal status needs Android 10.
+   */
+  private void registerThermalListener() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || thermalListener != null) {
+      return;
+    }
+    final PowerManager powerManager = (PowerManager) getActivity().getSystemService(Context.POWER_SERVICE);
+    final InferenceScheduler scheduler = this.scheduler;
+    thermalListener = status -> {
+      LOGGER.i("Thermal status %d", status);
+      scheduler.setThermalStatus(status);
+    };
+    scheduler.setThermalStatus(powerManager.getCurrentThermalStatus());
+    powerManager.addThermalStatusListener(thermalListener);
+  }
+
+  private void unregisterThermalListener() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || thermalListener == null) {
+      return;
+    }
+    final PowerManager powerManager = (PowerManager) getActivity().getSystemService(Context.POWER_SERVICE);
+    powerManager.removeThermalStatusListener(thermalListener);
+    thermalListener = null;
+  }
+
+  @Override
+  public JSONObject getStats() throws JSONException {
+    final JSONObject stats = super.getStats();
+    stats.put("lastInferenceMs", lastProcessingTimeMs);
+    final DetectionPipeline<DetectionJob, Classifier.Inputs, Classifier.Outputs> pipeline = this.pipeline;
+    if (pipeline != null) {
+      stats.put("preprocessMs", pipeline.getPreprocessMs());
+      stats.put("invokeMs", pipeline.getInvokeMs());
+      stats.put("decodeMs", pipeline.getDecodeMs());
+      stats.put("framesDiscarded", pipeline.getDiscarded());
+      stats.put("pipelineQueueDepth", pipeline.getQueueDepth());
+      stats.put("pipelineWaitMs", pipeline.getWaitMs());
+    }
+    final DetectionExecutor executor = DetectionExecutor.get();
+    stats.put("executorQueueDepth", executor.getQueueDepth());
+    stats.put("executorWaitMs", executor.getLastWaitMs());
+    stats.put("executorMaxWaitMs", executor.getMaxWaitMs());
+    stats.put("executorRejected", executor.getRejected());
+    if (scheduler != null) {
+      stats.put("detectionIntervalMs", scheduler.getIntervalMs());
+      stats.put("schedulerState", scheduler.getState().name().toLowerCase(Locale.US));
+      stats.put("thermalStatus", scheduler.getThermalStatus());
+    }
+    stats.put("motionSkips", motionSkips);
+    stats.put("blurSkips", blurSkips);
+    if (detector != null) {
+      stats.put("classifier", detector.getStatString());
+    }
+    return stats;
   }
 
   @Override
@@ -181,128 +403,325 @@ public class DetectorHybridActivity extends CameraActivity {
     final long currTimestamp = timestamp;
     trackingOverlay.postInvalidate();
 
-    // No mutex needed as this method is not reentrant.
-    if (computingDetection) {
+    if (benchmarking) {
       readyForNextImage();
       return;
     }
-    computingDetection = true;
+    final Rect roi = getDetectionRoi(previewWidth, previewHeight, sensorOrientation);
+    if (USE_MOTION_GATE) {
+      final boolean still = motionGate.isStill(getFrame(), roi);
+      final CachedDetection cached = cachedDetection;
+      final long now = SystemClock.uptimeMillis();
+      if (still && cached != null && now - cached.timeMs < MAX_CACHED_DETECTION_AGE_MS) {
+        motionSkips++;
+        readyForNextImage();
+        // Re-emitted detections are paced like inferred ones, without using up the budget.
+        if (now - Math.max(cached.timeMs, lastReemitMs) >= scheduler.getIntervalMs()) {
+          lastReemitMs = now;
+          publishDetection(cached.label, cached.confidence, cached.sharpness);
+        }
+        return;
+      }
+    }
+    // Frames blurred by motion or refocusing would cost a full inference for a useless result.
+    final float sharpness = Sharpness.score(getFrame(), roi);
+    if (sharpness < minSharpness) {
+      blurSkips++;
+      readyForNextImage();
+      return;
+    }
+    if (USE_MOTION_GATE) {
+      // The reference is the last inferred frame, so slow drift still adds up to motion.
+      motionGate.updateReference();
+    }
+
     LOGGER.i("Preparing image " + currTimestamp + " for detection in bg thread.");
+    final DetectionPipeline<DetectionJob, Classifier.Inputs, Classifier.Outputs> pipeline = getPipeline();
+    if (pipeline == null) {
+      readyForNextImage();
+      return;
+    }
+    // Only frames that reach the interpreter count against the budget; gated ones are cheap.
+    scheduler.onInferenceStart();
+    // The frame is kept until the preprocess stage has read it; conversion and cropping run
+    // there too, off this thread.
+    pipeline.submit(new DetectionJob(currTimestamp, getFrame(), retainFrame(), roi, sensorOrientation,
+      frameToCropTransform, cropToFrameTransform, sharpness, croppedBitmaps));
+  }
 
-    rgbFrameBitmap.setPixels(getRgbBytes(), 0, previewWidth, 0, 0, previewWidth, previewHeight);
+  /**
+   * @return the pipeline of the current detector, started again after the detector changed, or
+   * null if there is no detector.
+   */
+  private DetectionPipeline<DetectionJob, Classifier.Inputs, Classifier.Outputs> getPipeline() {
+    final Classifier current = detector;
+    if (current == null) {
+      return null;
+    }
+    if (pipeline == null || pipelineDetector != current) {
+      stopPipeline();
+      // Two inputs and two outputs: each stage works on one while the next stage has the other.
+      // The classifier may be shared, so the decode settings of this flow live in the outputs.
+      pipeline = new DetectionPipeline<>("detection", new DetectorStages(current),
+        Arrays.asList(current.newInputs(), current.newInputs()),
+        Arrays.asList(current.newOutputs(detectClasses, USE_FAST_MATH),
+          current.newOutputs(detectClasses, USE_FAST_MATH)));
+      pipelineDetector = current;
+    }
+    return pipeline;
+  }
 
-    int w = rgbFrameBitmap.getWidth();
-    int h = rgbFrameBitmap.getHeight();
-    Bitmap rgbFrameBitmapCustom;
-    if (sensorOrientation % 90 != 0) {
-      int height = (int) (h0 * h);
-      int y = (int) (y0 * h);
-      int width = Math.min((int) (w0 * w), (int) (height * 1.58));
-      int x = ((int) (w0 * w) - width) / 2;
-      rgbFrameBitmapCustom = Bitmap.createBitmap(rgbFrameBitmap, x, y, width, height);
-    } else {
-      int width = (int) (h0 * w);
-      int x = (int) (y0 * w);
-      int height = Math.min((int) (w0 * h), (int) (width * 1.58));
-      int y = ((int) (w0 * h) - height) / 2;
-      rgbFrameBitmapCustom = Bitmap.createBitmap(rgbFrameBitmap, x, y, width, height);
+  private void stopPipeline() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+      pipeline = null;
+      pipelineDetector = null;
     }
+  }
+
+  /**
+   * The detection stages of one detector. Each method only ever runs on its own stage thread,
+   * so each stage keeps its scratch buffers to itself.
+   */
+  private final class DetectorStages
+    implements DetectionPipeline.Stages<DetectionJob, Classifier.Inputs, Classifier.Outputs> {
 
-    readyForNextImage();
+    private final Classifier classifier;
+    // Preprocess stage: the converted frame for the bitmap path.
+    private int[] rgbBytes;
+    private Bitmap rgbFrameBitmap;
 
-    final Canvas canvas = new Canvas(croppedBitmap);
-    canvas.drawBitmap(rgbFrameBitmapCustom, frameToCropTransform, null);
-    // For examining the actual TF input.
-    if (SAVE_PREVIEW_BITMAP) {
-      ImageUtils.saveBitmap(croppedBitmap);
+    DetectorStages(final Classifier classifier) {
+      this.classifier = classifier;
     }
 
-    runInBackground(
-      new Runnable() {
-        @Override
-        public void run() {
-          LOGGER.i("Running detection on image " + currTimestamp);
-          final long startTime = SystemClock.uptimeMillis();
-          final List<Classifier.Recognition> results = detector.recognizeImage(croppedBitmap);
-          lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+    @Override
+    public void preprocess(final DetectionJob job, final Classifier.Inputs input) {
+      try {
+        if (USE_FUSED_INPUT) {
+          // The classifier samples the ROI straight from the camera frame.
+          classifier.preprocess(job.frame, job.roi, job.orientation, input);
+        } else {
+          classifier.preprocess(drawCrop(job), input);
+        }
+      } finally {
+        job.releaseFrame();
+        onReadyForFrame();
+      }
+    }
 
-          Log.e("CHECK", "run: " + results.size());
+    private Bitmap drawCrop(final DetectionJob job) {
+      final YuvFrame frame = job.frame;
+      if (rgbFrameBitmap == null
+        || rgbFrameBitmap.getWidth() != frame.getWidth() || rgbFrameBitmap.getHeight() != frame.getHeight()) {
+        rgbBytes = new int[frame.getWidth() * frame.getHeight()];
+        rgbFrameBitmap = Bitmap.createBitmap(frame.getWidth(), frame.getHeight(), Config.ARGB_8888);
+      }
+      YuvConverter.convert(frame, rgbBytes);
+      rgbFrameBitmap.setPixels(rgbBytes, 0, frame.getWidth(), 0, 0, frame.getWidth(), frame.getHeight());
+      final Rect roi = job.roi;
+      Bitmap rgbFrameBitmapCustom = Bitmap.createBitmap(rgbFrameBitmap, roi.left, roi.top, roi.width(), roi.height());
+
+      job.croppedBitmap = job.bitmapPool.acquire();
+      final Canvas canvas = new Canvas(job.croppedBitmap);
+      canvas.drawBitmap(rgbFrameBitmapCustom, job.frameToCrop, null);
+      // For examining the actual TF input.
+      if (SAVE_PREVIEW_BITMAP) {
+        ImageUtils.saveBitmap(job.croppedBitmap);
+      }
+      return job.croppedBitmap;
+    }
 
-          cropCopyBitmap = Bitmap.createBitmap(croppedBitmap);
-          final Canvas canvas = new Canvas(cropCopyBitmap);
-          final Paint paint = new Paint();
-          paint.setColor(Color.RED);
-          paint.setStyle(Style.STROKE);
-          paint.setStrokeWidth(2.0f);
+    @Override
+    public void invoke(final Classifier.Inputs input, final Classifier.Outputs output) {
+      final long startTime = SystemClock.uptimeMillis();
+      classifier.invoke(input, output);
+      lastProcessingTimeMs = SystemClock.uptimeMillis() - startTime;
+    }
 
-          final List<Classifier.Recognition> mappedRecognitions =
-            new LinkedList<Classifier.Recognition>();
+    @Override
+    public void decode(final DetectionJob job, final Classifier.Outputs output) {
+      try {
+        publish(job, classifier.decode(output));
+      } finally {
+        job.release();
+      }
+      onReadyForFrame();
+    }
 
-//          if (results.isEmpty()) eventListener.onObjectDetected(null);
+    @Override
+    public void discard(final DetectionJob job) {
+      job.release();
+    }
+  }
 
-          String detectedObject = null;
-          float max = 0;
-          for (final Classifier.Recognition result : results) {
-//          if (results.size() > 0) {
-//            final Classifier.Recognition result = results.get(0);
+  private void publish(final DetectionJob job, final List<Classifier.Recognition> results) {
+    LOGGER.i("Detected on image " + job.timestamp);
 
-            final RectF location = result.getLocation();
-            if (location != null && result.getConfidence() >= MINIMUM_CONFIDENCE_TF_OD_API) {
-              canvas.drawRect(location, paint);
+    Log.e("CHECK", "run: " + results.size());
 
-              cropToFrameTransform.mapRect(location);
+    // Debug copy of the model input with the boxes drawn in; only the bitmap path has one.
+    cropCopyBitmap = job.croppedBitmap != null ? Bitmap.createBitmap(job.croppedBitmap) : null;
+    final Canvas canvas = cropCopyBitmap != null ? new Canvas(cropCopyBitmap) : null;
+    final Paint paint = new Paint();
+    paint.setColor(Color.RED);
+    paint.setStyle(Style.STROKE);
+    paint.setStrokeWidth(2.0f);
 
-              result.setLocation(location);
-              mappedRecognitions.add(result);
+    final List<Classifier.Recognition> mappedRecognitions =
+      new LinkedList<Classifier.Recognition>();
 
-              if (result.getConfidence() > max) {
-                max = result.getConfidence();
-                detectedObject = result.getTitle();
-              }
+//    if (results.isEmpty()) eventListener.onObjectDetected(null);
 
-//              eventListener.onObjectDetected(result.getTitle());
-//              LOGGER.i("Detected object: " + result.getTitle());
-//              break;
-            }
-          }
+    String detectedObject = null;
+    float max = 0;
+    for (final Classifier.Recognition result : results) {
+//    if (results.size() > 0) {
+//      final Classifier.Recognition result = results.get(0);
 
-          eventListener.onObjectDetected(detectedObject);
-
-          String finalDetectedObject = detectedObject;
-          if (getActivity() != null) {
-            getActivity().runOnUiThread(new Runnable() {
-
-              @Override
-              public void run() {
-                if (Objects.equals(finalDetectedObject, overlay)) {
-                  if (!"selfie".equals(overlay)) cardStroke.setVisibility(View.VISIBLE);
-                  else ovalStroke.setVisibility(View.VISIBLE);
-                } else {
-                  if (!"selfie".equals(overlay)) cardStroke.setVisibility(View.GONE);
-                  else ovalStroke.setVisibility(View.GONE);
-                }
-              }
-            });
-          }
+      final RectF location = result.getLocation();
+      if (location != null && result.getConfidence() >= MINIMUM_CONFIDENCE_TF_OD_API) {
+        if (canvas != null) canvas.drawRect(location, paint);
+
+        job.cropToFrame.mapRect(location);
+
+        result.setLocation(location);
+        mappedRecognitions.add(result);
+
+        if (result.getConfidence() > max) {
+          max = result.getConfidence();
+          detectedObject = result.getTitle();
+        }
+
+//        eventListener.onObjectDetected(result.getTitle());
+//        LOGGER.i("Detected object: " + result.getTitle());
+//        break;
+      }
+    }
+
+    publishDetection(detectedObject, max, job.sharpness);
+    scheduler.onInferenceDone(lastProcessingTimeMs, detectedObject);
+    cachedDetection = new CachedDetection(detectedObject, max, job.sharpness, SystemClock.uptimeMillis());
+
+    //uncomment line below to enable bounding-box tracker
+//    tracker.trackResults(mappedRecognitions, job.timestamp);
+//    LOGGER.i("Detected object: " + detectedObject);
+    trackingOverlay.postInvalidate();
+
+//    getActivity().runOnUiThread(
+//      new Runnable() {
+//        @Override
+//        public void run() {
+//          showFrameInfo(previewWidth + "x" + previewHeight);
+//          showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
+//          showInference(lastProcessingTimeMs + "ms");
+//        }
+//      });
+  }
+
+  /**
+   * The last inferred detection, published as one object so the frame thread never sees the
+   * label of one inference with the confidence or sharpness of another.
+   */
+  private static final class CachedDetection {
+    // Best label, or null if nothing was detected.
+    final String label;
+    final float confidence;
+    // Sharpness of the inferred frame.
+    final float sharpness;
+    // When the inference finished.
+    final long timeMs;
+
+    CachedDetection(final String label, final float confidence, final float sharpness, final long timeMs) {
+      this.label = label;
+      this.confidence = confidence;
+      this.sharpness = sharpness;
+      this.timeMs = timeMs;
+    }
+  }
+
+  /**
+   * A frame and what is needed to map its results back. It is owned by one thread at a time: the
+   * UI thread until it is submitted, then each pipeline stage in turn.
+   */
+  private static final class DetectionJob {
+    final long timestamp;
+    final YuvFrame frame;
+    private Runnable frameRelease;
+    final Rect roi;
+    final int orientation;
+    final Matrix frameToCrop;
+    final Matrix cropToFrame;
+    final float sharpness;
+    // Bitmap path: the model input drawn by the preprocess stage, from and back to its pool.
+    Bitmap croppedBitmap;
+    final ObjectPool<Bitmap> bitmapPool;
+
+    DetectionJob(final long timestamp, final YuvFrame frame, final Runnable frameRelease,
+                 final Rect roi, final int orientation, final Matrix frameToCrop,
+                 final Matrix cropToFrame, final float sharpness, final ObjectPool<Bitmap> bitmapPool) {
+      this.timestamp = timestamp;
+      this.frame = frame;
+      this.frameRelease = frameRelease;
+      this.roi = roi;
+      this.orientation = orientation;
+      this.frameToCrop = frameToCrop;
+      this.cropToFrame = cropToFrame;
+      this.sharpness = sharpness;
+      this.bitmapPool = bitmapPool;
+    }
+
+    /** Hands the camera frame back, once it was read. */
+    void releaseFrame() {
+      if (frameRelease != null) {
+        frameRelease.run();
+        frameRelease = null;
+      }
+    }
+
+    void release() {
+      releaseFrame();
+      if (croppedBitmap != null) {
+        bitmapPool.release(croppedBitmap);
+        croppedBitmap = null;
+      }
+    }
+  }
+
+  /**
+   * Sends the detection to JS, as the label alone or with its scores when detailed events are
+   * on, and shows the matching overlay stroke.
+   */
+  private void publishDetection(final String detectedObject, final float confidence, final float sharpness) {
+    if (detailedEvents) {
+      try {
+        final JSONObject detection = new JSONObject();
+        detection.put("object", detectedObject != null ? detectedObject : JSONObject.NULL);
+        detection.put("confidence", confidence);
+        detection.put("sharpness", sharpness);
+        eventListener.onObjectDetected(detection);
+      } catch (final JSONException e) {
+        LOGGER.e(e, "Can't build detection event");
+      }
+    } else {
+      eventListener.onObjectDetected(detectedObject);
+    }
+
+    if (getActivity() != null) {
+      getActivity().runOnUiThread(new Runnable() {
 
-          //uncomment line below to enable bounding-box tracker
-//          tracker.trackResults(mappedRecognitions, currTimestamp);
-//          LOGGER.i("Detected object: " + detectedObject);
-          trackingOverlay.postInvalidate();
-
-          computingDetection = false;
-
-//          getActivity().runOnUiThread(
-//            new Runnable() {
-//              @Override
-//              public void run() {
-//                showFrameInfo(previewWidth + "x" + previewHeight);
-//                showCropInfo(cropCopyBitmap.getWidth() + "x" + cropCopyBitmap.getHeight());
-//                showInference(lastProcessingTimeMs + "ms");
-//              }
-//            });
+        @Override
+        public void run() {
+          if (Objects.equals(detectedObject, overlay)) {
+            if (!"selfie".equals(overlay)) cardStroke.setVisibility(View.VISIBLE);
+            else ovalStroke.setVisibility(View.VISIBLE);
+          } else {
+            if (!"selfie".equals(overlay)) cardStroke.setVisibility(View.GONE);
+            else ovalStroke.setVisibility(View.GONE);
+          }
         }
       });
+    }
   }
 
   @Override
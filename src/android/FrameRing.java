@@ -0,0 +1,124 @@
+package com.cordovaplugintflite;
+
+import android.hardware.Camera;
+
+import com.cordovaplugintflite.env.ImageUtils;
+import com.cordovaplugintflite.env.Mailbox;
+import com.cordovaplugintflite.env.YuvFrame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Camera1 {@link FrameSource}: a ring of preallocated NV21 preview buffers shared between the
+ * camera and the frame consumer.
+ * <p>
+ * Every buffer is owned by exactly one stage at a time:
+ * <ul>
+ * <li>the camera, after {@link Camera#addCallbackBuffer(byte[])}, until it delivers a frame;</li>
+ * <li>the ring, as the single pending frame handed in by {@link #offer(byte[])};</li>
+ * <li>the consumer, from {@link #poll()} until it gives the buffer back with {@link #recycle(YuvFrame)}.</li>
+ * </ul>
+ * A newer frame replaces a pending one that was not polled yet and the older buffer goes straight
+ * back to the camera, so the consumer always gets the freshest frame and the camera always has a
+ * free buffer to fill. The pending frame is handed over through a lock-free {@link Mailbox};
+ * only giving buffers back to the camera synchronizes with {@link #detach()}, so no buffer is
+ * added to a released camera.
+ */
+public class FrameRing implements FrameSource {
+
+  public static final int DEFAULT_SIZE = 3;
+
+  private Camera camera;
+  private final Mailbox<byte[]> pending = new Mailbox<>();
+
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final int size;
+  private final int width;
+  private final int height;
+  private final int frameBytes;
+
+  /**
+   * Allocates {@code size} buffers for {@code width}x{@code height} frames and hands them all to
+   * the camera.
+   */
+  public FrameRing(final Camera camera, final int size, final int width, final int height) {
+    this.camera = camera;
+    this.size = Math.max(2, size);
+    this.width = width;
+    this.height = height;
+    this.frameBytes = ImageUtils.getYUVByteSize(width, height);
+    for (int i = 0; i < this.size; i++) {
+      camera.addCallbackBuffer(new byte[frameBytes]);
+    }
+  }
+
+  /**
+   * Takes ownership of a frame delivered by the camera. A pending frame nobody polled is dropped
+   * and its buffer returned to the camera.
+   *
+   * @return false if the buffer was sized for another preview size, by a previous ring; it is
+   * then discarded instead of handed back to the camera.
+   */
+  public boolean offer(final byte[] frame) {
+    if (frame.length != frameBytes) {
+      return false;
+    }
+    delivered.incrementAndGet();
+    final byte[] replaced = pending.offer(frame);
+    if (replaced != null) {
+      dropped.incrementAndGet();
+      recycle(replaced);
+    }
+    return true;
+  }
+
+  @Override
+  public YuvFrame poll() {
+    final byte[] frame = pending.take();
+    return frame != null ? YuvFrame.ofNv21(frame, width, height) : null;
+  }
+
+  /**
+   * Gives a buffer back to the camera. Buffers are discarded once the ring is detached.
+   */
+  @Override
+  public void recycle(final YuvFrame frame) {
+    recycle(frame.getNv21());
+  }
+
+  private synchronized void recycle(final byte[] frame) {
+    if (camera != null) {
+      camera.addCallbackBuffer(frame);
+    }
+  }
+
+  @Override
+  public synchronized void detach() {
+    camera = null;
+    pending.take();
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,43 @@
+package com.cordovaplugintflite;
+
+import com.cordovaplugintflite.env.YuvFrame;
+
+/**
+ * Camera frames waiting for the detection pipeline, whichever camera API produced them.
+ * <p>
+ * A source keeps at most one pending frame, the newest; older ones are dropped as soon as a
+ * newer one arrives. The consumer takes it with {@link #poll()} and owns it until it gives it
+ * back with {@link #recycle(YuvFrame)}, after which the source may reuse its memory.
+ */
+public interface FrameSource {
+
+  /**
+   * @return the pending frame, now owned by the caller until {@link #recycle(YuvFrame)}, or null.
+   */
+  YuvFrame poll();
+
+  /**
+   * Gives a polled frame back to the camera.
+   */
+  void recycle(YuvFrame frame);
+
+  /**
+   * Stops handing frames out, before the camera is released.
+   */
+  void detach();
+
+  /**
+   * @return the number of frame buffers shared with the camera.
+   */
+  int getSize();
+
+  /**
+   * @return the number of frames the camera delivered.
+   */
+  long getDelivered();
+
+  /**
+   * @return the number of frames replaced by a newer one before the consumer took them.
+   */
+  long getDropped();
+}
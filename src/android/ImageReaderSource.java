@@ -0,0 +1,157 @@
+package com.cordovaplugintflite;
+
+import android.media.Image;
+import android.media.ImageReader;
+
+import com.cordovaplugintflite.env.Logger;
+import com.cordovaplugintflite.env.Mailbox;
+import com.cordovaplugintflite.env.YuvFrame;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Camera2 {@link FrameSource} fed by a {@code YUV_420_888} {@link ImageReader}.
+ * <p>
+ * The frames handed out wrap the {@link Image.Plane} buffers of the acquired image, so nothing
+ * is copied; the image is closed, and its slot returned to the reader, on
+ * {@link #recycle(YuvFrame)}. At most one pending and one polled image are held, so a reader
+ * with {@link #MIN_MAX_IMAGES} images always has one for the camera to fill.
+ * <p>
+ * The reader thread hands the pending image over through a lock-free {@link Mailbox}; only the
+ * consumer side synchronizes, with {@link #detach()}.
+ */
+public class ImageReaderSource implements FrameSource, ImageReader.OnImageAvailableListener {
+  private static final Logger LOGGER = new Logger();
+
+  /**
+   * Smallest {@code maxImages} for the reader: pending, polled, and one being filled.
+   */
+  public static final int MIN_MAX_IMAGES = 3;
+
+  // How long detach() waits for the consumer to give back the frames it still reads.
+  private static final long DETACH_TIMEOUT_MS = 1000;
+
+  private final int size;
+  private final Runnable onFrameAvailable;
+
+  private final Mailbox<Image> pending = new Mailbox<>();
+  private final Map<YuvFrame, Image> polled = new IdentityHashMap<>();
+  private volatile boolean detached;
+
+  private final AtomicLong delivered = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * @param size             {@code maxImages} of the reader this source listens to.
+   * @param onFrameAvailable Called on the reader's thread after each new pending frame.
+   */
+  public ImageReaderSource(final int size, final Runnable onFrameAvailable) {
+    this.size = size;
+    this.onFrameAvailable = onFrameAvailable;
+  }
+
+  @Override
+  public void onImageAvailable(final ImageReader reader) {
+    final Image image;
+    try {
+      image = reader.acquireNextImage();
+    } catch (final IllegalStateException e) {
+      LOGGER.w("No free image: %s", e.getMessage());
+      return;
+    }
+    if (image == null) {
+      return;
+    }
+    if (detached) {
+      image.close();
+      return;
+    }
+    delivered.incrementAndGet();
+    final Image replaced = pending.offer(image);
+    if (replaced != null) {
+      dropped.incrementAndGet();
+      replaced.close();
+    }
+    if (detached) {
+      // detach() ran during the offer and may have missed this image.
+      closePending();
+      return;
+    }
+    onFrameAvailable.run();
+  }
+
+  @Override
+  public synchronized YuvFrame poll() {
+    final Image image = pending.take();
+    if (image == null) {
+      return null;
+    }
+    if (detached) {
+      image.close();
+      return null;
+    }
+    final Image.Plane[] planes = image.getPlanes();
+    final YuvFrame frame = YuvFrame.ofPlanes(image.getWidth(), image.getHeight(),
+      planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+      planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride());
+    polled.put(frame, image);
+    return frame;
+  }
+
+  @Override
+  public synchronized void recycle(final YuvFrame frame) {
+    final Image image = polled.remove(frame);
+    if (image != null) {
+      image.close();
+    }
+    notifyAll();
+  }
+
+  /**
+   * Closes the pending image and waits, bounded, for the consumer to give back the polled ones:
+   * closing the reader frees the plane memory they still point to.
+   */
+  @Override
+  public synchronized void detach() {
+    detached = true;
+    closePending();
+    final long deadline = System.currentTimeMillis() + DETACH_TIMEOUT_MS;
+    long remaining = DETACH_TIMEOUT_MS;
+    while (!polled.isEmpty() && remaining > 0) {
+      try {
+        wait(remaining);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      remaining = deadline - System.currentTimeMillis();
+    }
+    if (!polled.isEmpty()) {
+      LOGGER.w("%d frames still in use after %d ms", polled.size(), DETACH_TIMEOUT_MS);
+    }
+  }
+
+  private void closePending() {
+    final Image image = pending.take();
+    if (image != null) {
+      image.close();
+    }
+  }
+
+  @Override
+  public int getSize() {
+    return size;
+  }
+
+  @Override
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  @Override
+  public long getDropped() {
+    return dropped.get();
+  }
+}
@@ -0,0 +1,134 @@
+package com.cordovaplugintflite;
+
+import android.os.PowerManager;
+import android.os.SystemClock;
+
+/**
+ * Decides when the next detection may start, so scanning stays within a detection rate budget
+ * and backs off before the device throttles.
+ * <p>
+ * The interval between detection starts is the largest of:
+ * <ul>
+ * <li>the budget, {@code 1000 / maxRate} ms;</li>
+ * <li>the smoothed inference latency divided by {@link #MAX_DUTY}, so the interpreter threads
+ * idle at least half of the time;</li>
+ * </ul>
+ * multiplied by a factor that grows with the thermal status. Once the same object was detected
+ * {@link #STABLE_DETECTIONS} times in a row the scheduler idles at {@link #IDLE_INTERVAL_MS},
+ * and bursts again as soon as the result changes.
+ * <p>
+ * All time comes from a {@link Clock}, so the policy can be driven deterministically.
+ */
+public class InferenceScheduler {
+
+  public static final float DEFAULT_MAX_RATE = 10;
+
+  /** Largest share of the time the interpreter may be busy. */
+  static final float MAX_DUTY = 0.5f;
+  static final int STABLE_DETECTIONS = 3;
+  static final long IDLE_INTERVAL_MS = 1000;
+  // Weight of the newest latency in the moving average.
+  private static final float LATENCY_SMOOTHING = 0.3f;
+
+  public interface Clock {
+    long uptimeMillis();
+  }
+
+  public static final Clock SYSTEM_CLOCK = SystemClock::uptimeMillis;
+
+  public enum State {BURST, IDLE}
+
+  private final Clock clock;
+  private final long budgetIntervalMs;
+
+  private long lastStartMs = Long.MIN_VALUE;
+  private float latencyMs;
+  private int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+  private State state = State.BURST;
+  private String lastDetection;
+  private int sameDetections;
+
+  /**
+   * @param maxRate Detections per second budget; 0 or less runs as often as the latency and
+   *                thermal state allow.
+   */
+  public InferenceScheduler(final float maxRate, final Clock clock) {
+    this.budgetIntervalMs = maxRate > 0 ? (long) (1000 / maxRate) : 0;
+    this.clock = clock;
+  }
+
+  /**
+   * @return true if a detection may start now.
+   */
+  public synchronized boolean isDue() {
+    return lastStartMs == Long.MIN_VALUE || clock.uptimeMillis() - lastStartMs >= getIntervalMs();
+  }
+
+  /**
+   * Records the start of a detection, once its frame is handed to the interpreter; frames
+   * dropped before that don't count against the budget. The caller reports its end with
+   * {@link #onInferenceDone(long, String)}.
+   */
+  public synchronized void onInferenceStart() {
+    lastStartMs = clock.uptimeMillis();
+  }
+
+  /**
+   * @param latencyMs Time the detection took.
+   * @param detection Label of the best detection, or null if nothing was detected.
+   */
+  public synchronized void onInferenceDone(final long latencyMs, final String detection) {
+    this.latencyMs = this.latencyMs == 0
+      ? latencyMs
+      : this.latencyMs + LATENCY_SMOOTHING * (latencyMs - this.latencyMs);
+
+    if (detection != null && detection.equals(lastDetection)) {
+      sameDetections++;
+    } else {
+      sameDetections = detection != null ? 1 : 0;
+      lastDetection = detection;
+    }
+    // A changed or lost detection leaves the idle state on the next frame that fits the budget.
+    state = sameDetections >= STABLE_DETECTIONS ? State.IDLE : State.BURST;
+  }
+
+  /**
+   * @param status One of the {@code PowerManager.THERMAL_STATUS_*} values.
+   */
+  public synchronized void setThermalStatus(final int status) {
+    thermalStatus = status;
+  }
+
+  /**
+   * @return the current minimum time between detection starts.
+   */
+  public synchronized long getIntervalMs() {
+    long interval = Math.max(budgetIntervalMs, (long) (latencyMs / MAX_DUTY));
+    if (state == State.IDLE) {
+      interval = Math.max(interval, IDLE_INTERVAL_MS);
+    }
+    return interval * thermalFactor(thermalStatus);
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public synchronized int getThermalStatus() {
+    return thermalStatus;
+  }
+
+  private static int thermalFactor(final int status) {
+    switch (status) {
+      case PowerManager.THERMAL_STATUS_NONE:
+      case PowerManager.THERMAL_STATUS_LIGHT:
+        return 1;
+      case PowerManager.THERMAL_STATUS_MODERATE:
+        return 2;
+      case PowerManager.THERMAL_STATUS_SEVERE:
+        return 4;
+      default:
+        return 8;
+    }
+  }
+}
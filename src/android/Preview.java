@@ -28,6 +28,22 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback {
   int facing = Camera.CameraInfo.CAMERA_FACING_BACK;
   int viewWidth;
   int viewHeight;
+  SizeChooser sizeChooser;
+  OnPreviewSizeChangedListener sizeChangedListener;
+
+  /** Picks the preview size among the supported ones. */
+  interface SizeChooser {
+    /**
+     * @param optimal The size fitting the view, one of {@code sizes}.
+     * @return one of {@code sizes}.
+     */
+    Camera.Size choose(List<Camera.Size> sizes, Camera.Size optimal);
+  }
+
+  /** Told after a new preview size was set on the camera, before the preview restarts. */
+  interface OnPreviewSizeChangedListener {
+    void onPreviewSizeChanged(int width, int height);
+  }
 
   Preview(Context context) {
     super(context);
@@ -73,6 +89,42 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback {
     return facing;
   }
 
+  public void setSizeChooser(SizeChooser sizeChooser) {
+    this.sizeChooser = sizeChooser;
+  }
+
+  public void setOnPreviewSizeChangedListener(OnPreviewSizeChangedListener listener) {
+    this.sizeChangedListener = listener;
+  }
+
+  /**
+   * Chooses the preview size again, for the current view, and restarts the preview if it
+   * changed.
+   */
+  public void refreshPreviewSize() {
+    if (mCamera == null || mSupportedPreviewSizes == null) {
+      return;
+    }
+    Camera.Size size = getOptimalPreviewSize(mSupportedPreviewSizes, mSurfaceView.getWidth(), mSurfaceView.getHeight());
+    if (size == null || size.equals(mPreviewSize)) {
+      return;
+    }
+    mPreviewSize = size;
+    mCamera.stopPreview();
+    Camera.Parameters parameters = mCamera.getParameters();
+    parameters.setPreviewSize(mPreviewSize.width, mPreviewSize.height);
+    mCamera.setParameters(parameters);
+    notifyPreviewSizeChanged();
+    requestLayout();
+    mCamera.startPreview();
+  }
+
+  private void notifyPreviewSizeChanged() {
+    if (sizeChangedListener != null) {
+      sizeChangedListener.onPreviewSizeChanged(mPreviewSize.width, mPreviewSize.height);
+    }
+  }
+
   public void printPreviewSize(String from) {
     Log.d(TAG, "printPreviewSize from " + from + ": > width: " + mPreviewSize.width + " height: " + mPreviewSize.height);
   }
@@ -140,6 +192,7 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback {
       Log.d(TAG, mPreviewSize.width + " " + mPreviewSize.height);
 
       camera.setParameters(parameters);
+      notifyPreviewSizeChanged();
     } catch (IOException exception) {
       Log.e(TAG, exception.getMessage());
     }
@@ -275,6 +328,10 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback {
       }
     }
 
+    if (sizeChooser != null) {
+      optimalSize = sizeChooser.choose(sizes, optimalSize);
+    }
+
     Log.d(TAG, "optimal preview size: w: " + optimalSize.width + " h: " + optimalSize.height);
     return optimalSize;
   }
@@ -293,6 +350,7 @@ class Preview extends RelativeLayout implements SurfaceHolder.Callback {
         requestLayout();
         //mCamera.setDisplayOrientation(90);
         mCamera.setParameters(parameters);
+        notifyPreviewSizeChanged();
         mCamera.startPreview();
       } catch (Exception exception) {
         Log.e(TAG, "Exception caused by surfaceChanged()", exception);
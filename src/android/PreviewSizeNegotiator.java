@@ -0,0 +1,73 @@
+package com.cordovaplugintflite;
+
+import android.graphics.Rect;
+import android.util.Size;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the preview size from what detection needs instead of what the view shows.
+ * <p>
+ * The detector only reads its region of interest, scaled to the model input, so any preview
+ * size whose ROI already has the model's resolution gives the same input. Among the supported
+ * sizes with the aspect ratio of the view's choice, the smallest such one is picked; every pixel
+ * beyond it is camera bandwidth and conversion work for nothing.
+ */
+public final class PreviewSizeNegotiator {
+
+  private static final double ASPECT_TOLERANCE = 0.1;
+
+  public interface RoiProvider {
+    /**
+     * @return the region of a {@code frameWidth} x {@code frameHeight} frame the detector reads.
+     */
+    Rect getRoi(int frameWidth, int frameHeight);
+  }
+
+  private PreviewSizeNegotiator() {
+  }
+
+  /**
+   * @param sizes      Supported preview sizes.
+   * @param preferred  The size picked for the view, whose aspect ratio is kept.
+   * @param modelInput Width and height of the model input.
+   * @param roi        Region the detector reads, for a given frame size.
+   * @param rotation   Clockwise rotation from the frame to the model input.
+   * @return the smallest size with the aspect ratio of {@code preferred} whose ROI covers the
+   * model input, or {@code preferred} if none smaller does.
+   */
+  public static Size choose(final List<Size> sizes, final Size preferred, final Size modelInput,
+                            final RoiProvider roi, final int rotation) {
+    final boolean transpose = rotation % 180 != 0;
+    final double aspect = (double) preferred.getWidth() / preferred.getHeight();
+    final List<Size> candidates = new ArrayList<>();
+    for (Size size : sizes) {
+      if (Math.abs((double) size.getWidth() / size.getHeight() - aspect) <= ASPECT_TOLERANCE
+        && area(size) <= area(preferred)) {
+        candidates.add(size);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Size>() {
+      @Override
+      public int compare(final Size a, final Size b) {
+        return Long.signum(area(a) - area(b));
+      }
+    });
+    for (Size size : candidates) {
+      final Rect region = roi.getRoi(size.getWidth(), size.getHeight());
+      final int width = transpose ? region.height() : region.width();
+      final int height = transpose ? region.width() : region.height();
+      if (width >= modelInput.getWidth() && height >= modelInput.getHeight()) {
+        return size;
+      }
+    }
+    return preferred;
+  }
+
+  private static long area(final Size size) {
+    return (long) size.getWidth() * size.getHeight();
+  }
+}
@@ -0,0 +1,31 @@
+package com.cordovaplugintflite;
+
+/**
+ * Sizes of the bridge messages that carry a capture to the page, as reported by getStats.
+ */
+final class ResultPayload {
+
+  private ResultPayload() {
+  }
+
+  /**
+   * @return the size of a binary result, which Cordova sends Base64-encoded.
+   */
+  static int binaryBytes(final int length) {
+    return (length + 2) / 3 * 4;
+  }
+
+  /**
+   * @return the size of {@code value} sent as a JSON array of one string, {@code ["..."]}. Base64
+   * and URLs need no escaping except '/', which Android's org.json writes as "\/".
+   */
+  static int stringBytes(final String value) {
+    int slashes = 0;
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) == '/') {
+        slashes++;
+      }
+    }
+    return value.length() + slashes + 4;
+  }
+}
@@ -0,0 +1,123 @@
+package com.cordovaplugintflite;
+
+import android.net.Uri;
+
+import com.cordovaplugintflite.env.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Short-lived cache files for captures handed to the web view by URL instead of by value.
+ * <p>
+ * Each capture gets a file of its own, so the web view can still load one while newer ones are
+ * stored. Captures beyond the newest {@link #MAX_ENTRIES} and captures older than
+ * {@link #MAX_AGE_MS} are evicted, and their files deleted, whenever a capture is stored or
+ * looked up; nothing runs in between. Files left by a previous process are removed on creation.
+ */
+public class ResultStore {
+  private static final Logger LOGGER = new Logger();
+
+  static final int MAX_ENTRIES = 8;
+  static final long MAX_AGE_MS = 60000;
+
+  private static final class Entry {
+    final File file;
+    final long storedAt = System.currentTimeMillis();
+
+    Entry(final File file) {
+      this.file = file;
+    }
+  }
+
+  private final File directory;
+  private final String baseUrl;
+  private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+
+  /**
+   * A store whose URLs are {@code file://} URLs of the files.
+   */
+  public ResultStore(final File directory) {
+    this(directory, null);
+  }
+
+  /**
+   * @param baseUrl Prefix of the URLs returned by {@link #put}, followed by the file name, e.g. a
+   *                path of the web view origin that {@link #find} serves. Null for
+   *                {@code file://} URLs.
+   */
+  public ResultStore(final File directory, final String baseUrl) {
+    this.directory = directory;
+    this.baseUrl = baseUrl;
+    deleteAll();
+  }
+
+  /**
+   * @return the URL of the stored {@code data}, valid until it is evicted.
+   */
+  public synchronized String put(final byte[] data) throws IOException {
+    evict(MAX_ENTRIES - 1);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+    final File file = new File(directory,
+      "result_" + UUID.randomUUID().toString().replace("-", "").substring(0, 12) + ".jpg");
+    final FileOutputStream out = new FileOutputStream(file);
+    try {
+      out.write(data);
+    } finally {
+      out.close();
+    }
+    entries.addLast(new Entry(file));
+    return baseUrl == null ? Uri.fromFile(file).toString() : baseUrl + file.getName();
+  }
+
+  /**
+   * @return the file of the stored capture with the given name, or null if there is none or it
+   * was evicted. Only names returned by {@link #put} resolve, so no other file can be reached.
+   */
+  public synchronized File find(final String name) {
+    evict(MAX_ENTRIES);
+    for (Entry entry : entries) {
+      if (entry.file.getName().equals(name)) {
+        return entry.file;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Deletes every stored capture.
+   */
+  public synchronized void clear() {
+    evict(0);
+    deleteAll();
+  }
+
+  /**
+   * Deletes expired captures and the oldest ones beyond {@code maxEntries}.
+   */
+  private void evict(final int maxEntries) {
+    final long expired = System.currentTimeMillis() - MAX_AGE_MS;
+    Entry oldest;
+    while ((oldest = entries.peekFirst()) != null
+      && (entries.size() > maxEntries || oldest.storedAt < expired)) {
+      entries.removeFirst();
+      if (!oldest.file.delete()) {
+        LOGGER.w("Could not delete %s", oldest.file);
+      }
+    }
+  }
+
+  private void deleteAll() {
+    final File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+  }
+}
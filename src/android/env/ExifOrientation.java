@@ -0,0 +1,74 @@
+package com.cordovaplugintflite.env;
+
+import androidx.exifinterface.media.ExifInterface;
+
+/**
+ * Stamps the EXIF orientation tag on an encoded JPEG, so viewers rotate the image instead of
+ * the pixels being rotated before encoding.
+ * <p>
+ * The tag goes in a minimal APP1 segment of its own: a big-endian TIFF header and a single IFD
+ * holding only the orientation. It is inserted after the start of image and, if present, the
+ * JFIF APP0 segment that has to come first.
+ */
+public final class ExifOrientation {
+
+  private static final int SOI = 0xD8;
+  private static final int APP0 = 0xE0;
+  private static final int APP1 = 0xE1;
+
+  private static final byte[] SEGMENT = {
+    (byte) 0xFF, (byte) APP1,
+    0, 34,                       // Segment length, these two bytes included.
+    'E', 'x', 'i', 'f', 0, 0,
+    'M', 'M', 0, 42,             // Big-endian TIFF header.
+    0, 0, 0, 8,                  // Offset of IFD0.
+    0, 1,                        // One entry:
+    0x01, 0x12,                  // orientation,
+    0, 3,                        // SHORT,
+    0, 0, 0, 1,                  // one value,
+    0, 0, 0, 0,                  // the value, patched in, and padding.
+    0, 0, 0, 0                   // No next IFD.
+  };
+  private static final int VALUE_OFFSET = 28;
+
+  private ExifOrientation() {
+  }
+
+  /**
+   * @param rotation Clockwise rotation that displays the image upright, a multiple of 90.
+   * @return the matching {@code ExifInterface.ORIENTATION_*} value.
+   */
+  public static int fromRotation(final int rotation) {
+    switch ((rotation % 360 + 360) % 360) {
+      case 90:
+        return ExifInterface.ORIENTATION_ROTATE_90;
+      case 180:
+        return ExifInterface.ORIENTATION_ROTATE_180;
+      case 270:
+        return ExifInterface.ORIENTATION_ROTATE_270;
+      default:
+        return ExifInterface.ORIENTATION_NORMAL;
+    }
+  }
+
+  /**
+   * @param jpeg     A JPEG without EXIF data, as encoded by {@code YuvImage}.
+   * @param rotation Clockwise rotation that displays the image upright.
+   * @return a copy of {@code jpeg} carrying the orientation.
+   */
+  public static byte[] stamp(final byte[] jpeg, final int rotation) {
+    if (jpeg.length < 4 || (jpeg[0] & 0xFF) != 0xFF || (jpeg[1] & 0xFF) != SOI) {
+      throw new IllegalArgumentException("Not a JPEG");
+    }
+    int insertAt = 2;
+    if ((jpeg[2] & 0xFF) == 0xFF && (jpeg[3] & 0xFF) == APP0) {
+      insertAt += 2 + ((jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF));
+    }
+    final byte[] out = new byte[jpeg.length + SEGMENT.length];
+    System.arraycopy(jpeg, 0, out, 0, insertAt);
+    System.arraycopy(SEGMENT, 0, out, insertAt, SEGMENT.length);
+    out[insertAt + VALUE_OFFSET + 1] = (byte) fromRotation(rotation);
+    System.arraycopy(jpeg, insertAt, out, insertAt + SEGMENT.length, jpeg.length - insertAt);
+    return out;
+  }
+}
@@ -0,0 +1,52 @@
+package com.cordovaplugintflite.env;
+
+/**
+ * Float-only approximations of {@code exp} and the logistic sigmoid for the box decoder.
+ * <p>
+ * {@link #exp(float)} writes {@code x = n * ln(2) + r} with an integer {@code n}, applied directly
+ * to the float exponent bits, and {@code |r| <= ln(2) / 2}, whose exponential is evaluated with a
+ * degree 6 polynomial. Over [-87, 88] the relative error is below 5e-7, a few float ulps.
+ * {@link #sigmoid(float)} is built on top of it and has an absolute error below 2e-7.
+ */
+public final class FastMath {
+
+  private static final float LOG2_E = 1.4426950409f;
+  // ln(2) split in a part exactly representable with few mantissa bits and a remainder, so that
+  // n * LN2_HI is exact for the clamped range of n.
+  private static final float LN2_HI = 0.693145751953125f;
+  private static final float LN2_LO = 1.428606765330187e-06f;
+
+  // Taylor coefficients 1 / k! of e^r.
+  private static final float C2 = 1f / 2;
+  private static final float C3 = 1f / 6;
+  private static final float C4 = 1f / 24;
+  private static final float C5 = 1f / 120;
+  private static final float C6 = 1f / 720;
+
+  private static final float MIN_EXP_ARG = -87f;
+  private static final float MAX_EXP_ARG = 88f;
+
+  private FastMath() {
+  }
+
+  /**
+   * Approximates {@code (float) Math.exp(x)}. Arguments are clamped to [-87, 88], so the result
+   * never overflows to infinity or flushes to denormals.
+   */
+  public static float exp(float x) {
+    if (x < MIN_EXP_ARG) x = MIN_EXP_ARG;
+    if (x > MAX_EXP_ARG) x = MAX_EXP_ARG;
+
+    final int n = Math.round(x * LOG2_E);
+    final float r = (x - n * LN2_HI) - n * LN2_LO;
+    final float p = 1f + r * (1f + r * (C2 + r * (C3 + r * (C4 + r * (C5 + r * C6)))));
+    return p * Float.intBitsToFloat((n + 127) << 23);
+  }
+
+  /**
+   * Approximates the logistic function {@code 1 / (1 + exp(-x))}.
+   */
+  public static float sigmoid(final float x) {
+    return 1f / (1f + exp(-x));
+  }
+}
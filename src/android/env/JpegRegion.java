@@ -0,0 +1,91 @@
+package com.cordovaplugintflite.env;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+
+import java.io.IOException;
+
+/**
+ * Decodes a region of a JPEG without decoding the rest of it.
+ * <p>
+ * Regions are given in upright coordinates, as the picture is shown once its EXIF rotation
+ * and an optional vertical flip are applied. {@link #toEncoded} maps them back to the encoded
+ * pixels, so only the region has to be decoded, subsampled, and then rotated.
+ */
+public final class JpegRegion {
+
+  private JpegRegion() {
+  }
+
+  /**
+   * @return the bounds of the encoded picture, read from its header.
+   */
+  public static Rect bounds(final byte[] jpeg) {
+    final BitmapFactory.Options options = new BitmapFactory.Options();
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+    return new Rect(0, 0, options.outWidth, options.outHeight);
+  }
+
+  /**
+   * Maps a region of the upright picture to the encoded one.
+   *
+   * @param upright       Region of the upright picture, within its bounds.
+   * @param width         Width of the encoded picture.
+   * @param height        Height of the encoded picture.
+   * @param rotation      Clockwise rotation from encoded to upright: 0, 90, 180 or 270.
+   * @param flipVertical  Whether the upright picture is also flipped upside down after rotation.
+   */
+  public static Rect toEncoded(final Rect upright, final int width, final int height,
+                               final int rotation, final boolean flipVertical) {
+    final int uprightHeight = rotation % 180 == 0 ? height : width;
+    final int top = flipVertical ? uprightHeight - upright.bottom : upright.top;
+    final int bottom = flipVertical ? uprightHeight - upright.top : upright.bottom;
+    switch (rotation) {
+      case 90:
+        return new Rect(top, height - upright.right, bottom, height - upright.left);
+      case 180:
+        return new Rect(width - upright.right, height - bottom, width - upright.left, height - top);
+      case 270:
+        return new Rect(width - bottom, upright.left, width - top, upright.right);
+      default:
+        return new Rect(upright.left, top, upright.right, bottom);
+    }
+  }
+
+  /**
+   * @return the largest power of two that still subsamples {@code width} to at least
+   * {@code targetWidth}, or 1 if there is no target.
+   */
+  public static int sampleSize(final int width, final int targetWidth) {
+    int sampleSize = 1;
+    if (targetWidth > 0) {
+      while (width / (sampleSize * 2) >= targetWidth) {
+        sampleSize *= 2;
+      }
+    }
+    return sampleSize;
+  }
+
+  /**
+   * Decodes {@code region} of the encoded picture, subsampled by {@code sampleSize}.
+   */
+  public static Bitmap decode(final byte[] jpeg, final Rect region, final int sampleSize)
+    throws IOException {
+    final BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(jpeg, 0, jpeg.length, false);
+    try {
+      final BitmapFactory.Options options = new BitmapFactory.Options();
+      options.inSampleSize = sampleSize;
+      options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+      final Bitmap bitmap = decoder.decodeRegion(region, options);
+      if (bitmap == null) {
+        throw new IOException("Could not decode region " + region);
+      }
+      return bitmap;
+    } finally {
+      decoder.recycle();
+    }
+  }
+}
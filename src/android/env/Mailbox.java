@@ -0,0 +1,33 @@
+package com.cordovaplugintflite.env;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free single-slot handoff of the latest item between one producer and one consumer.
+ * <p>
+ * The producer never waits: {@link #offer(Object)} replaces an item nobody took yet and returns
+ * it, so the producer can recycle it. The consumer never sees an older item than the newest one
+ * offered before its {@link #take()}.
+ */
+public class Mailbox<T> {
+
+  private final AtomicReference<T> slot = new AtomicReference<>();
+
+  /**
+   * @return the item this one replaced, now owned by the caller again, or null.
+   */
+  public T offer(final T item) {
+    return slot.getAndSet(item);
+  }
+
+  /**
+   * @return the newest item, now owned by the caller, or null if there is none.
+   */
+  public T take() {
+    return slot.getAndSet(null);
+  }
+
+  public boolean isEmpty() {
+    return slot.get() == null;
+  }
+}
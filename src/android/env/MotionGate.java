@@ -0,0 +1,80 @@
+package com.cordovaplugintflite.env;
+
+import android.graphics.Rect;
+
+/**
+ * Tells whether a region of the camera frame changed since the last frame that was inferred,
+ * from the luma plane alone.
+ * <p>
+ * The region is sampled on a coarse grid, {@link #GRID} x {@link #GRID} Y bytes, and compared
+ * with the samples of the reference frame as a mean absolute difference. That reads a few
+ * thousand bytes per frame, so it is far cheaper than a detection.
+ */
+public class MotionGate {
+
+  static final int GRID = 32;
+
+  private final float threshold;
+  private final byte[] current = new byte[GRID * GRID];
+  private final byte[] reference = new byte[GRID * GRID];
+  private final Rect referenceRoi = new Rect();
+  private final Rect currentRoi = new Rect();
+  private boolean hasReference;
+
+  /**
+   * @param threshold Mean absolute luma difference, 0 to 255, above which the region moved.
+   */
+  public MotionGate(final float threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Samples the region of {@code frame} and compares it with the reference.
+   *
+   * @return true if the region is still, false if it moved, there is no reference or the region
+   * differs from the reference one.
+   */
+  public boolean isStill(final YuvFrame frame, final Rect roi) {
+    sample(frame, roi);
+    if (!hasReference || !roi.equals(referenceRoi)) {
+      return false;
+    }
+    int sum = 0;
+    for (int i = 0; i < current.length; i++) {
+      sum += Math.abs((0xff & current[i]) - (0xff & reference[i]));
+    }
+    return sum <= threshold * current.length;
+  }
+
+  /**
+   * Makes the frame last passed to {@link #isStill} the reference, once it was inferred.
+   */
+  public void updateReference() {
+    System.arraycopy(current, 0, reference, 0, current.length);
+    referenceRoi.set(currentRoi);
+    hasReference = true;
+  }
+
+  /**
+   * Forgets the reference, so the next frame is never still.
+   */
+  public void reset() {
+    hasReference = false;
+  }
+
+  private void sample(final YuvFrame frame, final Rect roi) {
+    currentRoi.set(roi);
+    final byte[] nv21 = frame.getNv21();
+    final int stride = frame.getYRowStride();
+    final int width = roi.width();
+    final int height = roi.height();
+    int i = 0;
+    for (int gy = 0; gy < GRID; gy++) {
+      final int rowOffset = (roi.top + (2 * gy + 1) * height / (2 * GRID)) * stride;
+      for (int gx = 0; gx < GRID; gx++) {
+        final int offset = rowOffset + roi.left + (2 * gx + 1) * width / (2 * GRID);
+        current[i++] = nv21 != null ? nv21[offset] : frame.getYPlane().get(offset);
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package com.cordovaplugintflite.env;
+
+/**
+ * Clockwise rotation of NV21 frames, by multiples of 90 degrees, into a caller-provided buffer.
+ * <p>
+ * Both planes are walked in {@link #TILE} x {@link #TILE} tiles. Rotating by 90 or 270 turns
+ * source rows into destination columns, so within a tile the destination lines it writes stay in
+ * cache. The chroma plane is rotated as whole VU pairs, so each chroma byte is read and written
+ * once.
+ */
+public final class Nv21Rotation {
+
+  static final int TILE = 32;
+
+  private Nv21Rotation() {
+  }
+
+  /**
+   * @param src      NV21 frame of {@code width} x {@code height}, both even.
+   * @param rotation 90, 180 or 270.
+   * @param dst      At least as large as {@code src}; receives the rotated frame, whose width
+   *                 and height are swapped for 90 and 270.
+   */
+  public static void rotate(final byte[] src, final int width, final int height, final int rotation,
+                            final byte[] dst) {
+    if (rotation != 90 && rotation != 180 && rotation != 270) {
+      throw new IllegalArgumentException("rotation must be 90, 180 or 270, got " + rotation);
+    }
+    final int frameSize = width * height;
+    rotatePlane(src, 0, dst, 0, width, height, 1, rotation);
+    rotatePlane(src, frameSize, dst, frameSize, width / 2, height / 2, 2, rotation);
+  }
+
+  /**
+   * Rotates a plane of {@code width} x {@code height} elements of {@code bytes} bytes each.
+   */
+  private static void rotatePlane(final byte[] src, final int srcOffset, final byte[] dst,
+                                  final int dstOffset, final int width, final int height,
+                                  final int bytes, final int rotation) {
+    // Destination element of source (x, y), and the step to the one of (x + 1, y).
+    final int step;
+    switch (rotation) {
+      case 90:
+        step = height;
+        break;
+      case 180:
+        step = -1;
+        break;
+      default:
+        step = -height;
+        break;
+    }
+    for (int tileY = 0; tileY < height; tileY += TILE) {
+      final int endY = Math.min(tileY + TILE, height);
+      for (int tileX = 0; tileX < width; tileX += TILE) {
+        final int endX = Math.min(tileX + TILE, width);
+        for (int y = tileY; y < endY; y++) {
+          int s = srcOffset + (y * width + tileX) * bytes;
+          int d;
+          switch (rotation) {
+            case 90:
+              d = tileX * height + (height - 1 - y);
+              break;
+            case 180:
+              d = (height - 1 - y) * width + (width - 1 - tileX);
+              break;
+            default:
+              d = (width - 1 - tileX) * height + y;
+              break;
+          }
+          if (bytes == 1) {
+            for (int x = tileX; x < endX; x++, d += step) {
+              dst[dstOffset + d] = src[s++];
+            }
+          } else {
+            for (int x = tileX; x < endX; x++, d += step) {
+              final int o = dstOffset + 2 * d;
+              dst[o] = src[s++];
+              dst[o + 1] = src[s++];
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package com.cordovaplugintflite.env;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Lock-free pool of reusable buffers, so a buffer still read on one thread is never written on
+ * another: whoever {@link #acquire()}s a buffer owns it until it {@link #release(Object)}s it.
+ * <p>
+ * The pool grows on demand, by as many buffers as are ever in use at once, and keeps at most
+ * {@code maxIdle} of them when they come back.
+ */
+public class ObjectPool<T> {
+
+  public interface Factory<T> {
+    T create();
+  }
+
+  private final Factory<T> factory;
+  private final int maxIdle;
+  private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+
+  public ObjectPool(final Factory<T> factory, final int maxIdle) {
+    this.factory = factory;
+    this.maxIdle = maxIdle;
+  }
+
+  /**
+   * @return an idle buffer, or a new one if all are in use.
+   */
+  public T acquire() {
+    final T item = idle.poll();
+    return item != null ? item : factory.create();
+  }
+
+  /**
+   * Hands a buffer back; the caller must not touch it afterwards.
+   */
+  public void release(final T item) {
+    // size() walks the queue, but it holds at most maxIdle items.
+    if (idle.size() < maxIdle) {
+      idle.offer(item);
+    }
+  }
+}
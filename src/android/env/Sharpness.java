@@ -0,0 +1,62 @@
+package com.cordovaplugintflite.env;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Focus / motion blur score of a frame region, from the luma plane alone.
+ * <p>
+ * The score is the variance of the 4-neighbour Laplacian, taken at {@link #GRID} x {@link #GRID}
+ * points spread over the region. Each point uses its adjacent pixels, so the score still measures
+ * pixel-level detail while reading only a few thousand bytes. Higher is sharper; the scale
+ * depends on the scene and the sensor noise, so thresholds are tuned per use.
+ */
+public final class Sharpness {
+
+  static final int GRID = 64;
+
+  private Sharpness() {
+  }
+
+  /**
+   * @return the Laplacian variance of {@code roi} in {@code frame}, 0 for a region too small to
+   * measure.
+   */
+  public static float score(final YuvFrame frame, final Rect roi) {
+    final int left = Math.max(roi.left, 1);
+    final int top = Math.max(roi.top, 1);
+    final int width = Math.min(roi.right, frame.getWidth() - 1) - left;
+    final int height = Math.min(roi.bottom, frame.getHeight() - 1) - top;
+    if (width <= 0 || height <= 0) {
+      return 0;
+    }
+    final byte[] nv21 = frame.getNv21();
+    final ByteBuffer yPlane = frame.getYPlane();
+    final int stride = frame.getYRowStride();
+
+    long sum = 0;
+    long sumSquares = 0;
+    for (int gy = 0; gy < GRID; gy++) {
+      final int rowOffset = (top + (2 * gy + 1) * height / (2 * GRID)) * stride;
+      for (int gx = 0; gx < GRID; gx++) {
+        final int p = rowOffset + left + (2 * gx + 1) * width / (2 * GRID);
+        final int laplacian;
+        if (nv21 != null) {
+          laplacian = 4 * (0xff & nv21[p])
+            - (0xff & nv21[p - 1]) - (0xff & nv21[p + 1])
+            - (0xff & nv21[p - stride]) - (0xff & nv21[p + stride]);
+        } else {
+          laplacian = 4 * (0xff & yPlane.get(p))
+            - (0xff & yPlane.get(p - 1)) - (0xff & yPlane.get(p + 1))
+            - (0xff & yPlane.get(p - stride)) - (0xff & yPlane.get(p + stride));
+        }
+        sum += laplacian;
+        sumSquares += laplacian * laplacian;
+      }
+    }
+    final int n = GRID * GRID;
+    final float mean = (float) sum / n;
+    return (float) sumSquares / n - mean * mean;
+  }
+}
@@ -0,0 +1,238 @@
+package com.cordovaplugintflite.env;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Multi-threaded YUV to ARGB conversion for flows that need the full RGB frame, such as the
+ * bitmap model input drawn by the detector's preprocess stage when the fused input is off.
+ * <p>
+ * Rows are split into stripes, one per big CPU core. The caller converts one stripe and a
+ * shared pool the others. The per-channel products of {@link ImageUtils#convertYUV420SPToARGB8888}
+ * come from 256 entry tables, so each pixel costs table lookups, adds and the clamping. The
+ * output is bit-exact with the single-threaded methods in {@link ImageUtils}.
+ */
+public class YuvConverter {
+
+  private static final Logger LOGGER = new Logger();
+
+  // Stripes shorter than this cost more in handoff than they save.
+  private static final int MIN_STRIPE_ROWS = 32;
+
+  // 1192 * max(y - 16, 0), 1634 * (v - 128), 833 * (v - 128), 400 * (u - 128), 2066 * (u - 128).
+  private static final int[] Y_TABLE = new int[256];
+  private static final int[] RV_TABLE = new int[256];
+  private static final int[] GV_TABLE = new int[256];
+  private static final int[] GU_TABLE = new int[256];
+  private static final int[] BU_TABLE = new int[256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      Y_TABLE[i] = 1192 * (i < 16 ? 0 : i - 16);
+      RV_TABLE[i] = 1634 * (i - 128);
+      GV_TABLE[i] = 833 * (i - 128);
+      GU_TABLE[i] = 400 * (i - 128);
+      BU_TABLE[i] = 2066 * (i - 128);
+    }
+  }
+
+  // Most stripes a frame is split into; tests raise it on machines with few cores.
+  static int maxStripes = bigCoreCount();
+  private static ExecutorService pool;
+
+  private interface Stripe {
+    void convert(int rowStart, int rowEnd);
+  }
+
+  /**
+   * Same as {@link ImageUtils#convertYUV420SPToARGB8888}, striped across the big cores.
+   */
+  public static void convertYUV420SPToARGB8888(final byte[] input, final int width, final int height,
+                                               final int[] output) {
+    final int frameSize = width * height;
+    runStriped(height, (rowStart, rowEnd) -> {
+      for (int j = rowStart; j < rowEnd; j++) {
+        int yp = j * width;
+        int uvp = frameSize + (j >> 1) * width;
+        for (int i = 0; i < width; i += 2, uvp += 2) {
+          final int v = 0xff & input[uvp];
+          final int u = 0xff & input[uvp + 1];
+          output[yp] = toArgb(0xff & input[yp], u, v);
+          yp++;
+          if (i + 1 < width) {
+            output[yp] = toArgb(0xff & input[yp], u, v);
+            yp++;
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Same as {@link ImageUtils#convertYUV420ToARGB8888}, striped across the big cores.
+   */
+  public static void convertYUV420ToARGB8888(
+    final byte[] yData,
+    final byte[] uData,
+    final byte[] vData,
+    final int width,
+    final int height,
+    final int yRowStride,
+    final int uvRowStride,
+    final int uvPixelStride,
+    final int[] out) {
+    runStriped(height, (rowStart, rowEnd) -> {
+      for (int j = rowStart; j < rowEnd; j++) {
+        final int pY = yRowStride * j;
+        final int pUV = uvRowStride * (j >> 1);
+        int yp = j * width;
+        for (int i = 0; i < width; i++) {
+          final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+          out[yp++] = toArgb(0xff & yData[pY + i], 0xff & uData[uvOffset], 0xff & vData[uvOffset]);
+        }
+      }
+    });
+  }
+
+  /**
+   * Converts {@code frame} into {@code output}, reading an NV21 array or the strided planes of a
+   * Camera2 image in place.
+   */
+  public static void convert(final YuvFrame frame, final int[] output) {
+    final byte[] nv21 = frame.getNv21();
+    if (nv21 != null) {
+      convertYUV420SPToARGB8888(nv21, frame.getWidth(), frame.getHeight(), output);
+    } else {
+      convertYUV420ToARGB8888(frame.getYPlane(), frame.getUPlane(), frame.getVPlane(),
+        frame.getWidth(), frame.getHeight(),
+        frame.getYRowStride(), frame.getUvRowStride(), frame.getUvPixelStride(), output);
+    }
+  }
+
+  /**
+   * Same as {@link #convertYUV420ToARGB8888(byte[], byte[], byte[], int, int, int, int, int, int[])},
+   * reading the plane buffers with absolute gets instead of copying them into arrays first.
+   */
+  public static void convertYUV420ToARGB8888(
+    final ByteBuffer yData,
+    final ByteBuffer uData,
+    final ByteBuffer vData,
+    final int width,
+    final int height,
+    final int yRowStride,
+    final int uvRowStride,
+    final int uvPixelStride,
+    final int[] out) {
+    runStriped(height, (rowStart, rowEnd) -> {
+      for (int j = rowStart; j < rowEnd; j++) {
+        final int pY = yRowStride * j;
+        final int pUV = uvRowStride * (j >> 1);
+        int yp = j * width;
+        for (int i = 0; i < width; i++) {
+          final int uvOffset = pUV + (i >> 1) * uvPixelStride;
+          out[yp++] = toArgb(0xff & yData.get(pY + i), 0xff & uData.get(uvOffset), 0xff & vData.get(uvOffset));
+        }
+      }
+    });
+  }
+
+  private static int toArgb(final int y, final int u, final int v) {
+    final int max = ImageUtils.kMaxChannelValue;
+    final int y1192 = Y_TABLE[y];
+    int r = y1192 + RV_TABLE[v];
+    int g = y1192 - GV_TABLE[v] - GU_TABLE[u];
+    int b = y1192 + BU_TABLE[u];
+    r = r > max ? max : (r < 0 ? 0 : r);
+    g = g > max ? max : (g < 0 ? 0 : g);
+    b = b > max ? max : (b < 0 ? 0 : b);
+    return 0xff000000 | ((r << 6) & 0xff0000) | ((g >> 2) & 0xff00) | ((b >> 10) & 0xff);
+  }
+
+  /**
+   * Splits {@code height} rows into even-aligned stripes, so chroma rows are never shared, and
+   * waits for all of them.
+   */
+  private static void runStriped(final int height, final Stripe stripe) {
+    final int stripes = Math.min(maxStripes, Math.max(1, height / MIN_STRIPE_ROWS));
+    if (stripes == 1) {
+      stripe.convert(0, height);
+      return;
+    }
+    final int rowsPerStripe = ((height + stripes - 1) / stripes + 1) & ~1;
+    final ExecutorService executor = getPool();
+    final List<Future<?>> futures = new ArrayList<>(stripes - 1);
+    for (int start = rowsPerStripe; start < height; start += rowsPerStripe) {
+      final int rowStart = start;
+      final int rowEnd = Math.min(height, start + rowsPerStripe);
+      futures.add(executor.submit(() -> stripe.convert(rowStart, rowEnd)));
+    }
+    stripe.convert(0, Math.min(height, rowsPerStripe));
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+  }
+
+  private static synchronized ExecutorService getPool() {
+    if (pool == null) {
+      pool = Executors.newFixedThreadPool(Math.max(1, maxStripes - 1), new ThreadFactory() {
+        private int count;
+
+        @Override
+        public Thread newThread(Runnable r) {
+          final Thread thread = new Thread(r, "yuv-converter-" + count++);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return pool;
+  }
+
+  /**
+   * @return the number of cores whose maximum frequency is within 75% of the fastest one, or half
+   * the cores if the frequencies can't be read.
+   */
+  static int bigCoreCount() {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final long[] maxFreq = new long[cores];
+    long fastest = 0;
+    for (int i = 0; i < cores; i++) {
+      maxFreq[i] = readMaxFreq(i);
+      fastest = Math.max(fastest, maxFreq[i]);
+    }
+    if (fastest <= 0) {
+      return Math.max(1, cores / 2);
+    }
+    int big = 0;
+    for (int i = 0; i < cores; i++) {
+      if (maxFreq[i] * 4 >= fastest * 3) big++;
+    }
+    LOGGER.i("Using %d of %d cores for YUV conversion", big, cores);
+    return big;
+  }
+
+  private static long readMaxFreq(final int cpu) {
+    final String path = "/sys/devices/system/cpu/cpu" + cpu + "/cpufreq/cpuinfo_max_freq";
+    try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+      return Long.parseLong(reader.readLine().trim());
+    } catch (IOException | NumberFormatException | NullPointerException e) {
+      return 0;
+    }
+  }
+}
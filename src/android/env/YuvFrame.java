@@ -0,0 +1,86 @@
+package com.cordovaplugintflite.env;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A YUV 4:2:0 camera frame as three planes with their strides, without copying them.
+ * <p>
+ * Camera1 frames are a single NV21 array: the Y plane, then interleaved V/U pairs, which is the
+ * same layout as a plane set with a pixel stride of 2. Camera2 {@code YUV_420_888} frames keep
+ * the buffers of their {@code Image.Plane}s, which are only valid until the image is closed.
+ */
+public final class YuvFrame {
+
+  private final int width;
+  private final int height;
+  private final byte[] nv21;
+  private final ByteBuffer yPlane;
+  private final ByteBuffer uPlane;
+  private final ByteBuffer vPlane;
+  private final int yRowStride;
+  private final int uvRowStride;
+  private final int uvPixelStride;
+
+  private YuvFrame(final int width, final int height, final byte[] nv21,
+                   final ByteBuffer yPlane, final ByteBuffer uPlane, final ByteBuffer vPlane,
+                   final int yRowStride, final int uvRowStride, final int uvPixelStride) {
+    this.width = width;
+    this.height = height;
+    this.nv21 = nv21;
+    this.yPlane = yPlane;
+    this.uPlane = uPlane;
+    this.vPlane = vPlane;
+    this.yRowStride = yRowStride;
+    this.uvRowStride = uvRowStride;
+    this.uvPixelStride = uvPixelStride;
+  }
+
+  public static YuvFrame ofNv21(final byte[] nv21, final int width, final int height) {
+    return new YuvFrame(width, height, nv21, null, null, null, width, width, 2);
+  }
+
+  public static YuvFrame ofPlanes(final int width, final int height,
+                                  final ByteBuffer yPlane, final ByteBuffer uPlane, final ByteBuffer vPlane,
+                                  final int yRowStride, final int uvRowStride, final int uvPixelStride) {
+    return new YuvFrame(width, height, null, yPlane, uPlane, vPlane, yRowStride, uvRowStride, uvPixelStride);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * @return the NV21 array of a Camera1 frame, or null for a plane based frame.
+   */
+  public byte[] getNv21() {
+    return nv21;
+  }
+
+  public ByteBuffer getYPlane() {
+    return yPlane;
+  }
+
+  public ByteBuffer getUPlane() {
+    return uPlane;
+  }
+
+  public ByteBuffer getVPlane() {
+    return vPlane;
+  }
+
+  public int getYRowStride() {
+    return yRowStride;
+  }
+
+  public int getUvRowStride() {
+    return uvRowStride;
+  }
+
+  public int getUvPixelStride() {
+    return uvPixelStride;
+  }
+}
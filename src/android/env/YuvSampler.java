@@ -0,0 +1,236 @@
+package com.cordovaplugintflite.env;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Crops, rotates and scales a region of a YUV 4:2:0 frame straight into a model input buffer.
+ * <p>
+ * Each destination pixel samples the nearest source pixel at its center, the same mapping as
+ * drawing the cropped frame through {@link ImageUtils#getTransformationMatrix} without filtering.
+ * For rotations by multiples of 90 degrees that mapping is separable, so the source offsets are
+ * precomputed once per geometry as one map per destination row and one per destination column.
+ * The maps honour the row and pixel strides of the frame, so NV21 arrays and Camera2 planes are
+ * read in place. Only the sampled pixels are converted, with the same integer math as
+ * {@link ImageUtils#convertYUV420SPToARGB8888}, and each channel goes through the caller's 256
+ * entry lookup table.
+ */
+public class YuvSampler {
+
+  private int frameWidth;
+  private int frameHeight;
+  private int yRowStride;
+  private int uvRowStride;
+  private int uvPixelStride;
+  private final Rect roi = new Rect();
+  private int rotation;
+  private int dstWidth;
+  private int dstHeight;
+
+  // Offset of the sampled Y byte in its plane is rowY[dy] + colY[dx], of its U and V bytes in
+  // theirs rowUV[dy] + colUV[dx].
+  private int[] rowY;
+  private int[] rowUV;
+  private int[] colY;
+  private int[] colUV;
+
+  /**
+   * Sets the sampling geometry; the maps are only rebuilt when it changes.
+   *
+   * @param roi      Region of the frame to sample, in frame pixels.
+   * @param rotation Clockwise rotation applied to the region, a multiple of 90.
+   */
+  public void configure(final YuvFrame frame, final Rect roi,
+                        final int rotation, final int dstWidth, final int dstHeight) {
+    final int normalized = ((rotation % 360) + 360) % 360;
+    if (normalized % 90 != 0) {
+      throw new IllegalArgumentException("Rotation " + rotation + " is not a multiple of 90");
+    }
+    if (rowY != null && frame.getWidth() == frameWidth && frame.getHeight() == frameHeight
+      && frame.getYRowStride() == yRowStride && frame.getUvRowStride() == uvRowStride
+      && frame.getUvPixelStride() == uvPixelStride
+      && roi.equals(this.roi) && normalized == this.rotation
+      && dstWidth == this.dstWidth && dstHeight == this.dstHeight) {
+      return;
+    }
+    this.frameWidth = frame.getWidth();
+    this.frameHeight = frame.getHeight();
+    this.yRowStride = frame.getYRowStride();
+    this.uvRowStride = frame.getUvRowStride();
+    this.uvPixelStride = frame.getUvPixelStride();
+    this.roi.set(roi);
+    this.rotation = normalized;
+    this.dstWidth = dstWidth;
+    this.dstHeight = dstHeight;
+
+    rowY = new int[dstHeight];
+    rowUV = new int[dstHeight];
+    colY = new int[dstWidth];
+    colUV = new int[dstWidth];
+
+    final int roiWidth = roi.width();
+    final int roiHeight = roi.height();
+    final boolean transpose = normalized == 90 || normalized == 270;
+    // Size of the rotated region along the destination axes.
+    final float inWidth = transpose ? roiHeight : roiWidth;
+    final float inHeight = transpose ? roiWidth : roiHeight;
+
+    // Destination pixel centers relative to the destination center, in rotated source pixels,
+    // then rotated back by the inverse rotation around the region center.
+    for (int dx = 0; dx < dstWidth; dx++) {
+      final float u = (dx + 0.5f - dstWidth / 2.0f) * inWidth / dstWidth;
+      switch (normalized) {
+        case 0:
+          setColumnX(dx, sourceX(u + roiWidth / 2.0f));
+          break;
+        case 90:
+          setColumnY(dx, sourceY(-u + roiHeight / 2.0f));
+          break;
+        case 180:
+          setColumnX(dx, sourceX(-u + roiWidth / 2.0f));
+          break;
+        default:
+          setColumnY(dx, sourceY(u + roiHeight / 2.0f));
+          break;
+      }
+    }
+    for (int dy = 0; dy < dstHeight; dy++) {
+      final float v = (dy + 0.5f - dstHeight / 2.0f) * inHeight / dstHeight;
+      switch (normalized) {
+        case 0:
+          setRowY(dy, sourceY(v + roiHeight / 2.0f));
+          break;
+        case 90:
+          setRowX(dy, sourceX(v + roiWidth / 2.0f));
+          break;
+        case 180:
+          setRowY(dy, sourceY(-v + roiHeight / 2.0f));
+          break;
+        default:
+          setRowX(dy, sourceX(-v + roiWidth / 2.0f));
+          break;
+      }
+    }
+  }
+
+  /**
+   * Writes the sampled region of {@code frame} into {@code dst} as three floats per pixel, RGB
+   * order.
+   */
+  public void sample(final YuvFrame frame, final ByteBuffer dst, final float[] lookup) {
+    sample(frame, dst, lookup, null);
+  }
+
+  /**
+   * Writes the sampled region of {@code frame} into {@code dst} as three bytes per pixel, RGB
+   * order.
+   */
+  public void sample(final YuvFrame frame, final ByteBuffer dst, final byte[] lookup) {
+    sample(frame, dst, null, lookup);
+  }
+
+  private void sample(final YuvFrame frame, final ByteBuffer dst,
+                      final float[] floatLookup, final byte[] byteLookup) {
+    final byte[] nv21 = frame.getNv21();
+    if (nv21 != null) {
+      sampleNv21(nv21, dst, floatLookup, byteLookup);
+    } else {
+      samplePlanes(frame.getYPlane(), frame.getUPlane(), frame.getVPlane(), dst, floatLookup, byteLookup);
+    }
+  }
+
+  private void sampleNv21(final byte[] nv21, final ByteBuffer dst,
+                          final float[] floatLookup, final byte[] byteLookup) {
+    final int[] rowY = this.rowY;
+    final int[] rowUV = this.rowUV;
+    final int[] colY = this.colY;
+    final int[] colUV = this.colUV;
+    final int vStart = frameWidth * frameHeight;
+
+    for (int dy = 0; dy < dstHeight; dy++) {
+      final int yBase = rowY[dy];
+      final int uvBase = vStart + rowUV[dy];
+      for (int dx = 0; dx < dstWidth; dx++) {
+        final int uvp = uvBase + colUV[dx];
+        put(dst, 0xff & nv21[yBase + colY[dx]], 0xff & nv21[uvp + 1], 0xff & nv21[uvp],
+          floatLookup, byteLookup);
+      }
+    }
+  }
+
+  private void samplePlanes(final ByteBuffer yPlane, final ByteBuffer uPlane, final ByteBuffer vPlane,
+                            final ByteBuffer dst, final float[] floatLookup, final byte[] byteLookup) {
+    final int[] rowY = this.rowY;
+    final int[] rowUV = this.rowUV;
+    final int[] colY = this.colY;
+    final int[] colUV = this.colUV;
+
+    for (int dy = 0; dy < dstHeight; dy++) {
+      final int yBase = rowY[dy];
+      final int uvBase = rowUV[dy];
+      for (int dx = 0; dx < dstWidth; dx++) {
+        final int uvp = uvBase + colUV[dx];
+        put(dst, 0xff & yPlane.get(yBase + colY[dx]), 0xff & uPlane.get(uvp), 0xff & vPlane.get(uvp),
+          floatLookup, byteLookup);
+      }
+    }
+  }
+
+  private static void put(final ByteBuffer dst, final int yValue, final int uValue, final int vValue,
+                          final float[] floatLookup, final byte[] byteLookup) {
+    final int max = ImageUtils.kMaxChannelValue;
+    int y = yValue - 16;
+    if (y < 0) y = 0;
+    final int u = uValue - 128;
+    final int v = vValue - 128;
+
+    final int y1192 = 1192 * y;
+    int r = y1192 + 1634 * v;
+    int g = y1192 - 833 * v - 400 * u;
+    int b = y1192 + 2066 * u;
+    r = r > max ? max : (r < 0 ? 0 : r);
+    g = g > max ? max : (g < 0 ? 0 : g);
+    b = b > max ? max : (b < 0 ? 0 : b);
+
+    if (floatLookup != null) {
+      dst.putFloat(floatLookup[r >> 10]);
+      dst.putFloat(floatLookup[g >> 10]);
+      dst.putFloat(floatLookup[b >> 10]);
+    } else {
+      dst.put(byteLookup[r >> 10]);
+      dst.put(byteLookup[g >> 10]);
+      dst.put(byteLookup[b >> 10]);
+    }
+  }
+
+  private int sourceX(final float x) {
+    final int sx = (int) Math.floor(x);
+    return roi.left + (sx < 0 ? 0 : (sx >= roi.width() ? roi.width() - 1 : sx));
+  }
+
+  private int sourceY(final float y) {
+    final int sy = (int) Math.floor(y);
+    return roi.top + (sy < 0 ? 0 : (sy >= roi.height() ? roi.height() - 1 : sy));
+  }
+
+  private void setColumnX(final int dx, final int sx) {
+    colY[dx] = sx;
+    colUV[dx] = (sx >> 1) * uvPixelStride;
+  }
+
+  private void setColumnY(final int dx, final int sy) {
+    colY[dx] = sy * yRowStride;
+    colUV[dx] = (sy >> 1) * uvRowStride;
+  }
+
+  private void setRowX(final int dy, final int sx) {
+    rowY[dy] = sx;
+    rowUV[dy] = (sx >> 1) * uvPixelStride;
+  }
+
+  private void setRowY(final int dy, final int sy) {
+    rowY[dy] = sy * yRowStride;
+    rowUV[dy] = (sy >> 1) * uvRowStride;
+  }
+}
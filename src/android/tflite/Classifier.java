@@ -1,8 +1,12 @@
 package com.cordovaplugintflite.tflite;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.graphics.RectF;
 
+import com.cordovaplugintflite.env.YuvFrame;
+
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -11,6 +15,78 @@ import java.util.List;
 public interface Classifier {
     List<Recognition> recognizeImage(Bitmap bitmap);
 
+    /**
+     * Recognizes objects in a region of a camera frame, sampled straight into the model input
+     * without converting the rest of the frame.
+     *
+     * @param roi      Region of the frame to detect in, in frame pixels.
+     * @param rotation Clockwise rotation from the frame to the model input, a multiple of 90.
+     * @return the recognitions, located in model input pixels.
+     */
+    List<Recognition> recognizeYuv(YuvFrame frame, Rect roi, int rotation);
+
+    /**
+     * Input buffer of one inference, from {@link #newInputs()}.
+     */
+    interface Inputs {
+    }
+
+    /**
+     * Output buffers of one inference, from {@link #newOutputs()}.
+     */
+    interface Outputs {
+    }
+
+    /*
+     * Staged recognition: recognizeImage / recognizeYuv split in preprocess, invoke and decode,
+     * so consecutive frames can be in different stages at once, each with its own inputs and
+     * outputs. The scratch state of preprocess and decode lives in those inputs and outputs, so
+     * any number of pipelines may share a classifier, as long as each inputs or outputs object
+     * is used by one thread at a time.
+     */
+
+    /**
+     * @return a new model input buffer for {@link #preprocess} and {@link #invoke}.
+     */
+    Inputs newInputs();
+
+    /**
+     * @return new output buffers for {@link #invoke} and {@link #decode}, reporting every class
+     * with the exact math functions.
+     */
+    Outputs newOutputs();
+
+    /**
+     * @param activeClasses Titles of the classes {@link #decode} reports, or null or empty for all.
+     *                      Each cell still takes the best of all classes; a cell whose best class
+     *                      is inactive is dropped before non-maximum suppression. Titles that
+     *                      match no label are ignored, and if none matches every class is reported.
+     * @param useFastMath   Decode boxes with the float approximations in
+     *                      {@link com.cordovaplugintflite.env.FastMath} instead of the exact functions.
+     * @return new output buffers for {@link #invoke} and {@link #decode}.
+     */
+    Outputs newOutputs(Collection<String> activeClasses, boolean useFastMath);
+
+    /**
+     * Samples a region of a camera frame into {@code input}, as {@link #recognizeYuv} does.
+     */
+    void preprocess(YuvFrame frame, Rect roi, int rotation, Inputs input);
+
+    /**
+     * Writes a bitmap of the model input size into {@code input}, as {@link #recognizeImage} does.
+     */
+    void preprocess(Bitmap bitmap, Inputs input);
+
+    /**
+     * Runs the model from {@code input} into {@code outputs}.
+     */
+    void invoke(Inputs input, Outputs outputs);
+
+    /**
+     * @return the recognitions in {@code outputs}, located in model input pixels.
+     */
+    List<Recognition> decode(Outputs outputs);
+
     void enableStatLogging(final boolean debug);
 
     String getStatString();
@@ -23,6 +99,16 @@ public interface Classifier {
 
     abstract float getObjThresh();
 
+    /**
+     * @return the width in pixels of the bitmaps expected by {@link #recognizeImage(Bitmap)}.
+     */
+    int getInputWidth();
+
+    /**
+     * @return the height in pixels of the bitmaps expected by {@link #recognizeImage(Bitmap)}.
+     */
+    int getInputHeight();
+
     /**
      * An immutable result returned by a Classifier describing what was recognized.
      */
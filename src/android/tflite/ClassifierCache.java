@@ -0,0 +1,73 @@
+package com.cordovaplugintflite.tflite;
+
+import android.content.Context;
+
+import com.cordovaplugintflite.env.Logger;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process-wide cache of loaded classifiers, keyed by model, labels and delegate.
+ * <p>
+ * Stopping and starting the camera reuses the already warmed up interpreter instead of loading
+ * the model and compiling the delegate again. Cached classifiers stay open until they are
+ * evicted or the cache is cleared. Across app launches, GPU / NNAPI programs are reused from the
+ * on-disk {@link CompilationCache}.
+ */
+public final class ClassifierCache {
+
+  private static final Logger LOGGER = new Logger();
+
+  private static final Map<String, Classifier> CLASSIFIERS = new HashMap<>();
+
+  private ClassifierCache() {
+  }
+
+  /**
+   * @return the cached classifier for these options, loading it on first use.
+   */
+  public static synchronized Classifier get(
+    final Context context,
+    final String modelFilename,
+    final String labelFilename,
+    final boolean isQuantized,
+    final DelegateSelector.Choice delegate)
+    throws IOException {
+    final String key = key(modelFilename, labelFilename, isQuantized, delegate);
+    Classifier classifier = CLASSIFIERS.get(key);
+    if (classifier == null) {
+      classifier = YoloV4Classifier.create(context.getAssets(), modelFilename, labelFilename, isQuantized,
+        delegate, CompilationCache.open(context, modelFilename, delegate));
+      CLASSIFIERS.put(key, classifier);
+      LOGGER.i("Loaded classifier %s", key);
+    } else {
+      LOGGER.i("Reusing classifier %s", key);
+    }
+    return classifier;
+  }
+
+  /**
+   * Removes {@code classifier} from the cache and closes it.
+   */
+  public static synchronized void evict(final Classifier classifier) {
+    CLASSIFIERS.values().remove(classifier);
+    classifier.close();
+  }
+
+  /**
+   * Closes and removes all cached classifiers.
+   */
+  public static synchronized void clear() {
+    for (Classifier classifier : CLASSIFIERS.values()) {
+      classifier.close();
+    }
+    CLASSIFIERS.clear();
+  }
+
+  private static String key(final String modelFilename, final String labelFilename,
+                            final boolean isQuantized, final DelegateSelector.Choice delegate) {
+    return modelFilename + "|" + labelFilename + "|" + isQuantized + "|" + delegate;
+  }
+}
@@ -0,0 +1,171 @@
+package com.cordovaplugintflite.tflite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+
+import com.cordovaplugintflite.env.Logger;
+import com.cordovaplugintflite.env.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * On-disk cache of compiled GPU / NNAPI delegate programs in the app cache directory.
+ * <p>
+ * Each model and delegate choice gets its own directory, named after a token made of the model
+ * content hash and the delegate options, so a changed model or backend never reads programs
+ * compiled for another one. The delegates validate what they read and recompile on mismatch;
+ * if building the interpreter still fails, {@link #invalidate()} drops the entry and the caller
+ * retries without it. Hashing a new model version removes the directories and preference
+ * entries of the version it replaces.
+ */
+public class CompilationCache {
+
+  private static final Logger LOGGER = new Logger();
+
+  private static final String DIR_NAME = "tflite_delegates";
+  private static final String PREFS_NAME = "cordova_plugin_tflite_models";
+
+  private final File dir;
+  private final String modelToken;
+  private final boolean hit;
+
+  private CompilationCache(final File dir, final String modelToken) {
+    this.dir = dir;
+    this.modelToken = modelToken;
+    final String[] files = dir.list();
+    this.hit = files != null && files.length > 0;
+  }
+
+  /**
+   * @return the cache entry for the model and delegate, or null if the delegate compiles nothing
+   * or the cache directory can't be created.
+   */
+  public static CompilationCache open(final Context context, final String modelFilename,
+                                      final DelegateSelector.Choice delegate) {
+    if (delegate.backend != DelegateSelector.Backend.GPU
+      && delegate.backend != DelegateSelector.Backend.NNAPI) {
+      return null;
+    }
+    try {
+      final String token = modelHash(context, modelFilename) + "_" + delegate.backend.name().toLowerCase(Locale.US);
+      final File dir = new File(new File(context.getCacheDir(), DIR_NAME), token);
+      if (!dir.isDirectory() && !dir.mkdirs()) {
+        LOGGER.w("Can't create delegate cache %s", dir);
+        return null;
+      }
+      return new CompilationCache(dir, token);
+    } catch (IOException | NoSuchAlgorithmException e) {
+      LOGGER.w("Delegate cache disabled: %s", e);
+      return null;
+    }
+  }
+
+  public File getDir() {
+    return dir;
+  }
+
+  public String getModelToken() {
+    return modelToken;
+  }
+
+  /**
+   * @return true if compiled programs were already on disk when the entry was opened.
+   */
+  public boolean isHit() {
+    return hit;
+  }
+
+  /**
+   * Deletes the cached programs of this entry.
+   */
+  public void invalidate() {
+    deleteFiles(dir);
+  }
+
+  private static void deleteFiles(final File dir) {
+    final File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      if (!file.delete()) {
+        LOGGER.w("Can't delete %s", file);
+      }
+    }
+  }
+
+  /**
+   * Hashes the model once per app install; assets can only change with an update.
+   */
+  private static String modelHash(final Context context, final String modelFilename)
+    throws IOException, NoSuchAlgorithmException {
+    long installTime;
+    try {
+      installTime = context.getPackageManager()
+        .getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+    } catch (PackageManager.NameNotFoundException e) {
+      installTime = 0;
+    }
+    final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    final String key = modelFilename + "|" + installTime;
+    String hash = prefs.getString(key, null);
+    if (hash == null) {
+      final MappedByteBuffer model = Utils.loadModelFile(context.getAssets(), modelFilename);
+      final MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      sha1.update(model);
+      final byte[] digest = sha1.digest();
+      final StringBuilder hex = new StringBuilder();
+      for (int i = 0; i < 8; i++) {
+        hex.append(String.format("%02x", digest[i]));
+      }
+      hash = hex.toString();
+      final SharedPreferences.Editor editor = prefs.edit();
+      removeStale(context, prefs, editor, modelFilename, hash);
+      editor.putString(key, hash).apply();
+    }
+    return hash;
+  }
+
+  /**
+   * Removes the hashes of the model stored by earlier installs, and the programs compiled for
+   * them unless the model is unchanged or another model still has the same hash.
+   */
+  private static void removeStale(final Context context, final SharedPreferences prefs,
+                                  final SharedPreferences.Editor editor, final String modelFilename,
+                                  final String hash) {
+    final String prefix = modelFilename + "|";
+    final Map<String, ?> entries = prefs.getAll();
+    for (Map.Entry<String, ?> entry : entries.entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) continue;
+      editor.remove(entry.getKey());
+      final Object staleHash = entry.getValue();
+      if (hash.equals(staleHash) || isUsedByOtherModel(entries, prefix, staleHash)) continue;
+      final File[] dirs = new File(context.getCacheDir(), DIR_NAME).listFiles();
+      if (dirs == null) continue;
+      for (File dir : dirs) {
+        if (dir.getName().startsWith(staleHash + "_")) {
+          LOGGER.i("Removing stale delegate cache %s", dir);
+          deleteFiles(dir);
+          if (!dir.delete()) {
+            LOGGER.w("Can't delete %s", dir);
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isUsedByOtherModel(final Map<String, ?> entries, final String prefix,
+                                            final Object hash) {
+    for (Map.Entry<String, ?> entry : entries.entrySet()) {
+      if (!entry.getKey().startsWith(prefix) && hash.equals(entry.getValue())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
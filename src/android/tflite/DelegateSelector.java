@@ -0,0 +1,334 @@
+package com.cordovaplugintflite.tflite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetManager;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.cordovaplugintflite.env.Logger;
+import com.cordovaplugintflite.env.Utils;
+
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+import org.tensorflow.lite.gpu.CompatibilityList;
+import org.tensorflow.lite.gpu.GpuDelegate;
+import org.tensorflow.lite.nnapi.NnApiDelegate;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks the fastest TFLite backend (CPU, XNNPACK, GPU or NNAPI) and thread count for a model on
+ * the current device.
+ * <p>
+ * The first launch times a few inferences on every candidate and persists the winner in shared
+ * preferences, keyed by model file, device model and SoC. Later launches reuse it without
+ * benchmarking. The timing is behind {@link Runner}, so the selection itself does not need an
+ * interpreter.
+ */
+public class DelegateSelector {
+
+  private static final Logger LOGGER = new Logger();
+
+  private static final String PREFS_NAME = "cordova_plugin_tflite_delegate";
+
+  private static final int DEFAULT_THREADS = 4;
+
+  private static final int WARMUP_RUNS = 1;
+  private static final int TIMED_RUNS = 2;
+
+  public enum Backend {
+    CPU, XNNPACK, GPU, NNAPI
+  }
+
+  /**
+   * The backend used before any benchmark ran, and whenever every candidate failed.
+   */
+  public static final Choice DEFAULT = new Choice(Backend.CPU, DEFAULT_THREADS);
+
+  /**
+   * A backend with the number of CPU threads for the ops it does not take over.
+   */
+  public static class Choice {
+    public final Backend backend;
+    public final int numThreads;
+
+    public Choice(final Backend backend, final int numThreads) {
+      this.backend = backend;
+      this.numThreads = numThreads;
+    }
+
+    /**
+     * Adds the options and delegates of this choice to {@code options}. Created delegates are
+     * appended to {@code delegates}, the caller closes them after the interpreter.
+     */
+    public void apply(final Interpreter.Options options, final List<AutoCloseable> delegates) {
+      apply(options, delegates, null);
+    }
+
+    /**
+     * Like {@link #apply(Interpreter.Options, List)}, with the GPU / NNAPI delegate reading and
+     * writing its compiled programs in {@code cache}, if not null.
+     */
+    public void apply(final Interpreter.Options options, final List<AutoCloseable> delegates,
+                      final CompilationCache cache) {
+      options.setNumThreads(numThreads);
+      options.setUseXNNPACK(backend == Backend.XNNPACK);
+      switch (backend) {
+        case GPU:
+          final GpuDelegate.Options gpuOptions = new GpuDelegate.Options();
+          if (cache != null) {
+            gpuOptions.setSerializationParams(cache.getDir().getAbsolutePath(), cache.getModelToken());
+          }
+          final GpuDelegate gpuDelegate = new GpuDelegate(gpuOptions);
+          delegates.add(gpuDelegate);
+          options.addDelegate(gpuDelegate);
+          break;
+        case NNAPI:
+          if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+            throw new UnsupportedOperationException("NNAPI delegate needs Android P or above");
+          }
+          final NnApiDelegate.Options nnApiOptions = new NnApiDelegate.Options();
+          if (cache != null) {
+            nnApiOptions.setCacheDir(cache.getDir().getAbsolutePath());
+            nnApiOptions.setModelToken(cache.getModelToken());
+          }
+          final NnApiDelegate nnApiDelegate = new NnApiDelegate(nnApiOptions);
+          delegates.add(nnApiDelegate);
+          options.addDelegate(nnApiDelegate);
+          options.setAllowFp16PrecisionForFp32(true);
+          break;
+        default:
+          break;
+      }
+    }
+
+    /**
+     * @return the choice stored by {@link #toString()}, or null if it can't be parsed.
+     */
+    public static Choice parse(final String value) {
+      if (value == null) return null;
+      final String[] parts = value.split(":");
+      if (parts.length != 2) return null;
+      try {
+        return new Choice(Backend.valueOf(parts[0]), Integer.parseInt(parts[1]));
+      } catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Choice)) return false;
+      final Choice other = (Choice) o;
+      return backend == other.backend && numThreads == other.numThreads;
+    }
+
+    @Override
+    public int hashCode() {
+      return backend.hashCode() * 31 + numThreads;
+    }
+
+    @Override
+    public String toString() {
+      return backend.name() + ":" + numThreads;
+    }
+  }
+
+  /**
+   * Times inferences for one candidate.
+   */
+  public interface Runner {
+    /**
+     * @param bestMs the mean time of the fastest candidate so far; the runner may give up early
+     *               once it is clearly slower.
+     * @return the mean time of one inference in ms.
+     * @throws Exception if the backend is not available or can't run the model.
+     */
+    float time(Choice choice, float bestMs) throws Exception;
+  }
+
+  /**
+   * Resolves the backend requested from JS. {@code "auto"} (or empty) means the persisted
+   * benchmark winner, and null if there is none yet; a positive {@code numThreads} overrides the
+   * thread count either way.
+   */
+  public static Choice resolve(final Context context, final String modelFilename,
+                               final String backend, final int numThreads) {
+    Choice choice;
+    if (backend == null || backend.isEmpty() || "auto".equalsIgnoreCase(backend)) {
+      choice = load(context, modelFilename);
+    } else {
+      try {
+        choice = new Choice(Backend.valueOf(backend.toUpperCase(Locale.US)), DEFAULT_THREADS);
+      } catch (IllegalArgumentException e) {
+        LOGGER.w("Unknown delegate %s, using %s", backend, DEFAULT);
+        choice = DEFAULT;
+      }
+    }
+    if (choice != null && numThreads > 0) {
+      choice = new Choice(choice.backend, numThreads);
+    }
+    return choice;
+  }
+
+  /**
+   * @return the benchmark winner persisted for this model and device, or null.
+   */
+  public static Choice load(final Context context, final String modelFilename) {
+    final SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    return Choice.parse(prefs.getString(key(modelFilename), null));
+  }
+
+  public static void save(final Context context, final String modelFilename, final Choice choice) {
+    context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+      .edit()
+      .putString(key(modelFilename), choice.toString())
+      .apply();
+  }
+
+  /**
+   * Benchmarks every candidate on this device and persists the winner. Blocks for several
+   * inferences per candidate, so it must not run on the UI thread.
+   */
+  public static Choice benchmark(final Context context, final String modelFilename) throws Exception {
+    final AssetManager assetManager = context.getAssets();
+    final Choice best = select(candidates(), new InterpreterRunner(Utils.loadModelFile(assetManager, modelFilename)));
+    save(context, modelFilename, best);
+    return best;
+  }
+
+  /**
+   * @return the fastest candidate, or {@link #DEFAULT} if none of them could run.
+   */
+  public static Choice select(final List<Choice> candidates, final Runner runner) {
+    Choice best = null;
+    float bestMs = Float.POSITIVE_INFINITY;
+    for (final Choice candidate : candidates) {
+      final float ms;
+      try {
+        ms = runner.time(candidate, bestMs);
+      } catch (Exception e) {
+        LOGGER.w("Delegate %s unavailable: %s", candidate, e);
+        continue;
+      }
+      LOGGER.i("Delegate %s: %.1f ms", candidate, ms);
+      if (ms < bestMs) {
+        best = candidate;
+        bestMs = ms;
+      }
+    }
+    if (best == null) {
+      return DEFAULT;
+    }
+    LOGGER.i("Selected delegate %s (%.1f ms)", best, bestMs);
+    return best;
+  }
+
+  /**
+   * @return the backends and thread counts worth timing on this device.
+   */
+  public static List<Choice> candidates() {
+    final int cores = Runtime.getRuntime().availableProcessors();
+    final List<Choice> candidates = new ArrayList<>();
+    for (final int threads : new int[]{2, 4}) {
+      if (threads <= cores) {
+        candidates.add(new Choice(Backend.CPU, threads));
+        candidates.add(new Choice(Backend.XNNPACK, threads));
+      }
+    }
+    final CompatibilityList compatibilityList = new CompatibilityList();
+    try {
+      if (compatibilityList.isDelegateSupportedOnThisDevice()) {
+        candidates.add(new Choice(Backend.GPU, DEFAULT_THREADS));
+      }
+    } finally {
+      compatibilityList.close();
+    }
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+      candidates.add(new Choice(Backend.NNAPI, DEFAULT_THREADS));
+    }
+    return candidates;
+  }
+
+  private static String key(final String modelFilename) {
+    return modelFilename + "|" + Build.MODEL + "|" + Build.BOARD + "|" + Build.HARDWARE;
+  }
+
+  /**
+   * Times the model on blank input with a real interpreter.
+   */
+  static class InterpreterRunner implements Runner {
+    private final MappedByteBuffer model;
+
+    InterpreterRunner(final MappedByteBuffer model) {
+      this.model = model;
+    }
+
+    @Override
+    public float time(final Choice choice, final float bestMs) throws Exception {
+      final Interpreter.Options options = new Interpreter.Options();
+      final List<AutoCloseable> delegates = new ArrayList<>();
+      Interpreter interpreter = null;
+      try {
+        choice.apply(options, delegates);
+        interpreter = newInterpreter(options);
+
+        final Tensor input = interpreter.getInputTensor(0);
+        final ByteBuffer inputBuffer = ByteBuffer.allocateDirect(input.numBytes()).order(ByteOrder.nativeOrder());
+        final Map<Integer, Object> outputMap = new HashMap<>();
+        for (int i = 0; i < interpreter.getOutputTensorCount(); i++) {
+          final Tensor output = interpreter.getOutputTensor(i);
+          outputMap.put(i, ByteBuffer.allocateDirect(output.numBytes()).order(ByteOrder.nativeOrder()));
+        }
+        final Object[] inputArray = {inputBuffer};
+
+        // Warm-up runs are not cut off: the first one includes the GPU / NNAPI compilation.
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+          runOnce(interpreter, inputArray, outputMap);
+        }
+        long totalMs = 0;
+        for (int run = 0; run < TIMED_RUNS; run++) {
+          final long start = SystemClock.uptimeMillis();
+          runOnce(interpreter, inputArray, outputMap);
+          final long runMs = SystemClock.uptimeMillis() - start;
+          // A timed run far slower than the best candidate won't win on average either.
+          if (runMs > 3 * bestMs) {
+            return Float.POSITIVE_INFINITY;
+          }
+          totalMs += runMs;
+        }
+        return totalMs / (float) TIMED_RUNS;
+      } finally {
+        if (interpreter != null) interpreter.close();
+        for (final AutoCloseable delegate : delegates) {
+          delegate.close();
+        }
+      }
+    }
+
+    /**
+     * @return a new interpreter for the model; the JVM tests substitute a scripted one.
+     */
+    Interpreter newInterpreter(final Interpreter.Options options) {
+      return new Interpreter(model, options);
+    }
+
+    private static void runOnce(final Interpreter interpreter, final Object[] inputArray,
+                                final Map<Integer, Object> outputMap) {
+      ((ByteBuffer) inputArray[0]).rewind();
+      for (final Object output : outputMap.values()) {
+        ((ByteBuffer) output).rewind();
+      }
+      interpreter.runForMultipleInputsOutputs(inputArray, outputMap);
+    }
+  }
+}
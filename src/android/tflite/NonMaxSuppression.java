@@ -0,0 +1,188 @@
+package com.cordovaplugintflite.tflite;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Greedy per-class non-maximum suppression over primitive candidate arrays.
+ * <p>
+ * Candidates are sorted once by (class ascending, score descending) and suppressed in place with
+ * a bit set, so a frame costs one primitive sort plus the pairwise IoU checks within each class.
+ * All buffers grow on demand and are reused between frames.
+ */
+public class NonMaxSuppression {
+
+  // Sort key layout: class (11 bits) | inverted score bits (31 bits) | candidate index (21 bits).
+  private static final int INDEX_BITS = 21;
+  private static final int SCORE_BITS = 31;
+  private static final long INDEX_MASK = (1L << INDEX_BITS) - 1;
+  private static final int MAX_CLASSES = 1 << 11;
+  private static final int MAX_CANDIDATES = 1 << INDEX_BITS;
+
+  private final float iouThreshold;
+
+  private int count;
+  private int[] ids;
+  private int[] classes;
+  private float[] scores;
+  // left, top, right, bottom per candidate
+  private float[] boxes;
+  private long[] keys;
+
+  private int keptCount;
+  private int[] kept;
+  private final BitSet suppressed = new BitSet();
+
+  /**
+   * @param iouThreshold Candidates overlapping a kept box of the same class by at least this IoU
+   *                     are suppressed.
+   */
+  public NonMaxSuppression(final float iouThreshold) {
+    this.iouThreshold = iouThreshold;
+    ensureCapacity(64);
+  }
+
+  /**
+   * Removes all candidates and results of the previous frame.
+   */
+  public void clear() {
+    count = 0;
+    keptCount = 0;
+  }
+
+  /**
+   * Adds a candidate box. The score must be positive.
+   */
+  public void add(final int id, final int detectedClass, final float score,
+                  final float left, final float top, final float right, final float bottom) {
+    if (detectedClass < 0 || detectedClass >= MAX_CLASSES) {
+      throw new IllegalArgumentException("Class out of range: " + detectedClass);
+    }
+    if (count == MAX_CANDIDATES) {
+      throw new IllegalStateException("Too many candidates");
+    }
+    if (count == ids.length) {
+      ensureCapacity(count * 2);
+    }
+    ids[count] = id;
+    classes[count] = detectedClass;
+    scores[count] = score;
+    boxes[4 * count] = left;
+    boxes[4 * count + 1] = top;
+    boxes[4 * count + 2] = right;
+    boxes[4 * count + 3] = bottom;
+    count++;
+  }
+
+  /**
+   * Runs the suppression over the added candidates.
+   *
+   * @return the number of kept candidates, ordered by class and then by descending score.
+   */
+  public int run() {
+    for (int i = 0; i < count; i++) {
+      // Bits of a positive float grow with its value, inverting them sorts high scores first.
+      final long scoreKey = Integer.MAX_VALUE - Float.floatToIntBits(scores[i]);
+      keys[i] = ((long) classes[i] << (SCORE_BITS + INDEX_BITS)) | (scoreKey << INDEX_BITS) | i;
+    }
+    Arrays.sort(keys, 0, count);
+
+    suppressed.clear();
+    keptCount = 0;
+    for (int i = 0; i < count; i++) {
+      if (suppressed.get(i)) continue;
+      final int a = (int) (keys[i] & INDEX_MASK);
+      kept[keptCount++] = a;
+
+      for (int j = i + 1; j < count; j++) {
+        final int b = (int) (keys[j] & INDEX_MASK);
+        if (classes[b] != classes[a]) break;
+        // Not "iou >= threshold": like the original implementation, a NaN IoU, between two
+        // zero-area boxes, suppresses.
+        if (!suppressed.get(j) && !(iou(a, b) < iouThreshold)) {
+          suppressed.set(j);
+        }
+      }
+    }
+    return keptCount;
+  }
+
+  /**
+   * @return the candidate index of the n-th kept box, valid until the next {@link #clear()}.
+   */
+  public int kept(final int n) {
+    return kept[n];
+  }
+
+  public int getId(final int index) {
+    return ids[index];
+  }
+
+  public int getDetectedClass(final int index) {
+    return classes[index];
+  }
+
+  public float getScore(final int index) {
+    return scores[index];
+  }
+
+  public float getLeft(final int index) {
+    return boxes[4 * index];
+  }
+
+  public float getTop(final int index) {
+    return boxes[4 * index + 1];
+  }
+
+  public float getRight(final int index) {
+    return boxes[4 * index + 2];
+  }
+
+  public float getBottom(final int index) {
+    return boxes[4 * index + 3];
+  }
+
+  private float iou(final int a, final int b) {
+    final float intersection = intersection(a, b);
+    final float union = area(a) + area(b) - intersection;
+    return intersection / union;
+  }
+
+  private float area(final int i) {
+    return (boxes[4 * i + 2] - boxes[4 * i]) * (boxes[4 * i + 3] - boxes[4 * i + 1]);
+  }
+
+  // Same center/size arithmetic as the original RectF based implementation, so the results match
+  // bit for bit.
+  private float intersection(final int a, final int b) {
+    final float aLeft = boxes[4 * a], aTop = boxes[4 * a + 1];
+    final float aRight = boxes[4 * a + 2], aBottom = boxes[4 * a + 3];
+    final float bLeft = boxes[4 * b], bTop = boxes[4 * b + 1];
+    final float bRight = boxes[4 * b + 2], bBottom = boxes[4 * b + 3];
+    final float w = overlap((aLeft + aRight) / 2, aRight - aLeft, (bLeft + bRight) / 2, bRight - bLeft);
+    final float h = overlap((aTop + aBottom) / 2, aBottom - aTop, (bTop + bBottom) / 2, bBottom - bTop);
+    if (w < 0 || h < 0) return 0;
+    return w * h;
+  }
+
+  private static float overlap(final float x1, final float w1, final float x2, final float w2) {
+    final float l1 = x1 - w1 / 2;
+    final float l2 = x2 - w2 / 2;
+    final float left = l1 > l2 ? l1 : l2;
+    final float r1 = x1 + w1 / 2;
+    final float r2 = x2 + w2 / 2;
+    final float right = r1 < r2 ? r1 : r2;
+    return right - left;
+  }
+
+  private void ensureCapacity(final int capacity) {
+    final int size = Math.min(capacity, MAX_CANDIDATES);
+    if (ids != null && ids.length >= size) return;
+    ids = ids == null ? new int[size] : Arrays.copyOf(ids, size);
+    classes = classes == null ? new int[size] : Arrays.copyOf(classes, size);
+    scores = scores == null ? new float[size] : Arrays.copyOf(scores, size);
+    boxes = boxes == null ? new float[4 * size] : Arrays.copyOf(boxes, 4 * size);
+    keys = new long[size];
+    kept = new int[size];
+  }
+}
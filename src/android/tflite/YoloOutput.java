@@ -0,0 +1,140 @@
+package com.cordovaplugintflite.tflite;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * One YOLO output tensor of shape [1, gridHeight, gridWidth, boxesPerBlock, 5 + numClasses], bound
+ * to a reusable direct buffer.
+ * <p>
+ * Float tensors are read through a float view. Quantized (uint8 / int8) tensors are read raw and
+ * only dequantized on demand, with the objectness threshold precomputed as an integer so rejected
+ * cells never leave the integer domain.
+ */
+class YoloOutput {
+
+  final int gridHeight;
+  final int gridWidth;
+  final int boxesPerBlock;
+  final int channels;
+
+  private final ByteBuffer bytes;
+  private final FloatBuffer floats;
+  private final boolean quantized;
+  private final boolean signed;
+  private final float scale;
+  private final int zeroPoint;
+
+  // Raw objectness values at or below this are rejected. Quantized tensors compare integers.
+  private float objThreshRaw;
+  private int objThreshQuantized;
+
+  YoloOutput(final Tensor tensor) {
+    final int[] shape = tensor.shape();
+    gridHeight = shape[1];
+    gridWidth = shape[2];
+    boxesPerBlock = shape[shape.length - 2];
+    channels = shape[shape.length - 1];
+
+    bytes = ByteBuffer.allocateDirect(tensor.numBytes()).order(ByteOrder.nativeOrder());
+    final DataType type = tensor.dataType();
+    quantized = type == DataType.UINT8 || type == DataType.INT8;
+    signed = type == DataType.INT8;
+    if (quantized) {
+      floats = null;
+      scale = tensor.quantizationParams().getScale();
+      zeroPoint = tensor.quantizationParams().getZeroPoint();
+    } else {
+      floats = bytes.asFloatBuffer();
+      scale = 1;
+      zeroPoint = 0;
+    }
+  }
+
+  /**
+   * @return the buffer to hand to the interpreter, rewound for the next run.
+   */
+  ByteBuffer rewind() {
+    bytes.rewind();
+    return bytes;
+  }
+
+  boolean isQuantized() {
+    return quantized;
+  }
+
+  /**
+   * Sets the detection threshold that {@link #rejects} applies to objectness alone. A cell's
+   * confidence is sigmoid(objectness) * classScore, so a cell is rejected only when even the
+   * largest class score this tensor can hold would leave it at or below the threshold: the top of
+   * the quantized range, capped by {@code classScoreMax}. An unbounded float tensor rejects nothing.
+   */
+  void setObjectnessThreshold(final float threshold, final float classScoreMax) {
+    final float bound = Math.min(classScoreMax, maxValue());
+    if (bound <= threshold) {
+      // No class score can lift any cell above the threshold.
+      objThreshRaw = Float.POSITIVE_INFINITY;
+    } else {
+      final double p = threshold / (double) bound;
+      // One ulp down, so that rounding never rejects a cell the full scan would keep.
+      objThreshRaw = Math.nextDown((float) Math.log(p / (1 - p)));
+    }
+    if (quantized) {
+      // scale * (q - zeroPoint) <= logit  <=>  q <= zeroPoint + logit / scale
+      objThreshQuantized = (int) Math.floor(zeroPoint + objThreshRaw / scale);
+    }
+  }
+
+  /**
+   * @return the largest value this tensor can hold after dequantization.
+   */
+  float maxValue() {
+    if (quantized) {
+      return scale * ((signed ? Byte.MAX_VALUE : 0xFF) - zeroPoint);
+    }
+    return Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * @return true if the objectness stored at {@code index} is at or below the threshold.
+   */
+  boolean rejects(final int index) {
+    if (quantized) {
+      return raw(index) <= objThreshQuantized;
+    }
+    return floats.get(index) <= objThreshRaw;
+  }
+
+  /**
+   * @return the dequantized value at the flat {@code index}.
+   */
+  float get(final int index) {
+    if (quantized) {
+      return scale * (raw(index) - zeroPoint);
+    }
+    return floats.get(index);
+  }
+
+  /**
+   * Copies {@code count} dequantized values starting at {@code index} into {@code dst}.
+   */
+  void get(final int index, final float[] dst, final int count) {
+    if (quantized) {
+      for (int c = 0; c < count; c++) {
+        dst[c] = scale * (raw(index + c) - zeroPoint);
+      }
+    } else {
+      floats.position(index);
+      floats.get(dst, 0, count);
+    }
+  }
+
+  private int raw(final int index) {
+    final byte value = bytes.get(index);
+    return signed ? value : value & 0xFF;
+  }
+}
@@ -2,28 +2,39 @@ package com.cordovaplugintflite.tflite;
 
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.graphics.RectF;
-import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.cordovaplugintflite.env.FastMath;
 import com.cordovaplugintflite.env.Logger;
 import com.cordovaplugintflite.env.Utils;
+import com.cordovaplugintflite.env.YuvFrame;
+import com.cordovaplugintflite.env.YuvSampler;
 
+import org.tensorflow.lite.DataType;
 import org.tensorflow.lite.Interpreter;
-import org.tensorflow.lite.gpu.GpuDelegate;
-import org.tensorflow.lite.nnapi.NnApiDelegate;
+import org.tensorflow.lite.Tensor;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
 import java.util.Vector;
 
 import static com.cordovaplugintflite.env.Utils.expit;
@@ -55,6 +66,47 @@ public class YoloV4Classifier implements Classifier {
     final String labelFilename,
     final boolean isQuantized)
     throws IOException {
+    return create(assetManager, modelFilename, labelFilename, isQuantized, DelegateSelector.DEFAULT);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for classifying images on the given backend.
+   *
+   * @param assetManager  The asset manager to be used to load assets.
+   * @param modelFilename The filepath of the model GraphDef protocol buffer.
+   * @param labelFilename The filepath of label file for classes.
+   * @param isQuantized   Boolean representing model is quantized or not
+   * @param delegate      The backend and thread count, see {@link DelegateSelector}.
+   */
+  public static Classifier create(
+    final AssetManager assetManager,
+    final String modelFilename,
+    final String labelFilename,
+    final boolean isQuantized,
+    final DelegateSelector.Choice delegate)
+    throws IOException {
+    return create(assetManager, modelFilename, labelFilename, isQuantized, delegate, null);
+  }
+
+  /**
+   * Initializes a native TensorFlow session for classifying images on the given backend, reusing
+   * the delegate programs compiled on an earlier launch.
+   *
+   * @param assetManager     The asset manager to be used to load assets.
+   * @param modelFilename    The filepath of the model GraphDef protocol buffer.
+   * @param labelFilename    The filepath of label file for classes.
+   * @param isQuantized      Boolean representing model is quantized or not
+   * @param delegate         The backend and thread count, see {@link DelegateSelector}.
+   * @param compilationCache Where the delegate keeps its compiled programs, or null for none.
+   */
+  public static Classifier create(
+    final AssetManager assetManager,
+    final String modelFilename,
+    final String labelFilename,
+    final boolean isQuantized,
+    final DelegateSelector.Choice delegate,
+    final CompilationCache compilationCache)
+    throws IOException {
     final YoloV4Classifier d = new YoloV4Classifier();
 
     String actualFilename = labelFilename.split("file:///android_asset/")[1];
@@ -68,64 +120,149 @@ public class YoloV4Classifier implements Classifier {
     br.close();
 
     try {
-      Interpreter.Options options = (new Interpreter.Options());
-      options.setNumThreads(NUM_THREADS);
-      if (isNNAPI) {
-        NnApiDelegate nnApiDelegate = null;
-        // Initialize interpreter with NNAPI delegate for Android Pie or above
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-          nnApiDelegate = new NnApiDelegate();
-          options.addDelegate(nnApiDelegate);
-          options.setNumThreads(NUM_THREADS);
-          options.setUseNNAPI(false);
-          options.setAllowFp16PrecisionForFp32(true);
-          options.setAllowBufferHandleOutput(true);
-          options.setUseNNAPI(true);
-        }
+      final MappedByteBuffer model = Utils.loadModelFile(assetManager, modelFilename);
+      d.delegate = delegate;
+      d.cacheState = compilationCache == null ? "off" : (compilationCache.isHit() ? "hit" : "miss");
+      try {
+        d.tfLite = new Interpreter(model, d.buildOptions(delegate, compilationCache));
+      } catch (RuntimeException e) {
+        if (compilationCache == null) throw e;
+        // Programs from another runtime or driver version; drop them and compile from scratch.
+        LOGGER.w("Delegate cache rejected, recompiling: %s", e);
+        d.closeDelegates();
+        compilationCache.invalidate();
+        d.cacheState = "stale";
+        d.tfLite = new Interpreter(model, d.buildOptions(delegate, null));
       }
-      if (isGPU) {
-        GpuDelegate gpuDelegate = new GpuDelegate();
-        options.addDelegate(gpuDelegate);
-      }
-      d.tfLite = new Interpreter(Utils.loadModelFile(assetManager, modelFilename), options);
+      LOGGER.i("Using delegate %s, cache %s", delegate, d.cacheState);
+      d.loadAnchorConfig(assetManager, modelFilename);
+      d.bindOutputs();
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    d.bindInput(modelFilename, isQuantized);
 
-    d.isModelQuantized = isQuantized;
-    // Pre-allocate buffers.
-    int numBytesPerChannel;
-    if (isQuantized) {
-      numBytesPerChannel = 1; // Quantized
-    } else {
-      numBytesPerChannel = 4; // Floating point
-    }
-    d.imgData = ByteBuffer.allocateDirect(1 * d.INPUT_SIZE * d.INPUT_SIZE * 3 * numBytesPerChannel);
-    d.imgData.order(ByteOrder.nativeOrder());
-    d.intValues = new int[d.INPUT_SIZE * d.INPUT_SIZE];
+    d.warmUpInBackground();
+    return d;
+  }
+
+  /**
+   * Wraps an interpreter that was already created, with the built-in anchors. The JVM tests
+   * script the interpreter this way.
+   */
+  static YoloV4Classifier create(final Interpreter interpreter, final List<String> labels) {
+    return create(interpreter, labels, Float.POSITIVE_INFINITY);
+  }
 
+  /**
+   * As {@link #create(Interpreter, List)}, with the largest raw class score the model outputs.
+   */
+  static YoloV4Classifier create(final Interpreter interpreter, final List<String> labels,
+                                 final float classScoreMax) {
+    final YoloV4Classifier d = new YoloV4Classifier();
+    d.labels.addAll(labels);
+    d.classScoreMax = classScoreMax;
+    d.delegate = DelegateSelector.DEFAULT;
+    d.cacheState = "off";
+    d.tfLite = interpreter;
+    d.bindOutputs();
+    d.bindInput("", false);
     return d;
   }
 
+  /**
+   * Reads the input geometry and type from the interpreter and pre-allocates the input buffers.
+   */
+  private void bindInput(final String modelFilename, final boolean isQuantized) {
+    // The input tensor type decides the input path; the flag is only a hint from the caller.
+    final Tensor input = tfLite.getInputTensor(0);
+    isModelQuantized = input.dataType() == DataType.UINT8 || input.dataType() == DataType.INT8;
+    if (isModelQuantized != isQuantized) {
+      LOGGER.w("Model %s input is %s, ignoring isQuantized=%b", modelFilename, input.dataType(), isQuantized);
+    }
+    buildInputLookup(input);
+
+    // Input shape is [1, height, width, 3].
+    final int[] inputShape = input.shape();
+    inputHeight = inputShape[1];
+    inputWidth = inputShape[2];
+    LOGGER.i("Input shape: %s", Arrays.toString(inputShape));
+
+    // Pre-allocate buffers.
+    imgData = ByteBuffer.allocateDirect(input.numBytes());
+    imgData.order(ByteOrder.nativeOrder());
+    intValues = new int[inputWidth * inputHeight];
+    inputs = new ModelInputs(imgData, intValues);
+  }
+
+  private Interpreter.Options buildOptions(final DelegateSelector.Choice delegate,
+                                           final CompilationCache compilationCache) {
+    final Interpreter.Options options = new Interpreter.Options();
+    delegate.apply(options, delegates, compilationCache);
+    return options;
+  }
+
+  /**
+   * Runs one inference on the still blank input buffer on a background thread, so the delegate
+   * setup and kernel compilation are paid before the first real frame. Recognition takes the
+   * same lock, so a frame arriving meanwhile waits instead of sharing the interpreter.
+   */
+  private void warmUpInBackground() {
+    new Thread(() -> {
+      synchronized (YoloV4Classifier.this) {
+        if (tfLite == null) return;
+        final long start = SystemClock.uptimeMillis();
+        imgData.rewind();
+        boundOutputs.rewind();
+        tfLite.runForMultipleInputsOutputs(inputs.array, boundOutputs.map);
+        warmUpMs = SystemClock.uptimeMillis() - start;
+        LOGGER.i("Warm-up inference took %d ms", warmUpMs);
+      }
+    }, "tflite-warmup").start();
+  }
+
   @Override
   public void enableStatLogging(final boolean logStats) {
   }
 
+  /**
+   * @return the delegate, whether its compiled programs came from the on-disk cache
+   * (hit / miss / stale / off) and the warm-up time.
+   */
   @Override
-  public String getStatString() {
-    return "";
+  public synchronized String getStatString() {
+    return "delegate=" + delegate + " cache=" + cacheState + " warmup=" + warmUpMs + "ms";
   }
 
+  /**
+   * Releases the interpreter and its delegates. The classifier returns no results afterwards.
+   */
   @Override
-  public void close() {
+  public synchronized void close() {
+    if (tfLite != null) {
+      tfLite.close();
+      tfLite = null;
+    }
+    closeDelegates();
   }
 
-  public void setNumThreads(int num_threads) {
+  private void closeDelegates() {
+    for (AutoCloseable delegate : delegates) {
+      try {
+        delegate.close();
+      } catch (Exception e) {
+        LOGGER.w("Failed to close delegate: %s", e);
+      }
+    }
+    delegates.clear();
+  }
+
+  public synchronized void setNumThreads(int num_threads) {
     if (tfLite != null) tfLite.setNumThreads(num_threads);
   }
 
   @Override
-  public void setUseNNAPI(boolean isChecked) {
+  public synchronized void setUseNNAPI(boolean isChecked) {
     if (tfLite != null) tfLite.setUseNNAPI(isChecked);
   }
 
@@ -134,6 +271,37 @@ public class YoloV4Classifier implements Classifier {
     return MINIMUM_CONFIDENCE_TF_OD_API;
   }
 
+  @Override
+  public int getInputWidth() {
+    return inputWidth;
+  }
+
+  @Override
+  public int getInputHeight() {
+    return inputHeight;
+  }
+
+  /**
+   * @return which labels are in {@code titles}, or null for all labels when {@code titles} is
+   * empty or matches none of them.
+   */
+  private boolean[] activeMask(final Collection<String> titles) {
+    if (titles == null || titles.isEmpty()) {
+      return null;
+    }
+    final boolean[] active = new boolean[labels.size()];
+    boolean any = false;
+    for (int c = 0; c < labels.size(); c++) {
+      active[c] = titles.contains(labels.get(c));
+      any |= active[c];
+    }
+    if (!any) {
+      LOGGER.w("None of the active classes %s is a known label, reporting all classes", titles);
+      return null;
+    }
+    return active;
+  }
+
   private static final Logger LOGGER = new Logger();
 
   // Float model
@@ -141,27 +309,27 @@ public class YoloV4Classifier implements Classifier {
 
   private static final float IMAGE_STD = 255.0f;
 
-  //config yolov4
-  private static final int INPUT_SIZE = 416;
-  private static final int[] OUTPUT_WIDTH = new int[]{26, 13, 13};
+  // The original decoder read only the first two outputs, whatever the model exposes.
+  private static final int DECODED_OUTPUTS = 2;
 
-  private static final int[][] MASKS = new int[][]{{0, 1, 2}, {3, 4, 5}, {6, 7, 8}};
-  private static final int[] ANCHORS = new int[]{
+  //default config yolov4, used when the model has no sidecar config
+  private static final int[][] DEFAULT_MASKS = new int[][]{{0, 1, 2}, {3, 4, 5}, {6, 7, 8}};
+  private static final float[] DEFAULT_ANCHORS = new float[]{
     10,13, 16,30, 33,23, 30,61, 62,45, 59,119, 116,90, 156,198, 373,326
   };
-  private static final float[] XYSCALE = new float[]{1.2f, 1.1f, 1.05f};
 
-  private static final int NUM_BOXES_PER_BLOCK = 3;
+  // Model geometry, read from the interpreter.
+  private int inputWidth;
+  private int inputHeight;
 
-  // Number of threads in the java app
-  private static final int NUM_THREADS = 4;
-  private static boolean isNNAPI = false;
-  private static boolean isGPU = false;
+  // Anchor config, read from the sidecar "<model>.json" asset if present.
+  private int[][] masks = DEFAULT_MASKS;
+  private float[] anchors = DEFAULT_ANCHORS;
+  // Per-output scale of the box center sigmoid, or null to use the plain sigmoid.
+  private float[] xyScale;
 
   private boolean isModelQuantized;
 
-  // Config values.
-
   // Pre-allocated buffers.
   private Vector<String> labels = new Vector<String>();
   private int[] intValues;
@@ -169,207 +337,407 @@ public class YoloV4Classifier implements Classifier {
   private ByteBuffer imgData;
 
   private Interpreter tfLite;
+  // Delegates added to the interpreter options, owned by this classifier.
+  private final List<AutoCloseable> delegates = new ArrayList<>();
+
+  // Stats.
+  private DelegateSelector.Choice delegate;
+  private String cacheState;
+  private long warmUpMs;
 
   private YoloV4Classifier() {
   }
 
-  //non maximum suppression
-  protected ArrayList<Recognition> nms(ArrayList<Recognition> list) {
-    ArrayList<Recognition> nmsList = new ArrayList<Recognition>();
-
-    for (int k = 0; k < labels.size(); k++) {
-      //1.find max confidence per class
-      PriorityQueue<Recognition> pq =
-        new PriorityQueue<Recognition>(
-          50,
-          new Comparator<Recognition>() {
-            @Override
-            public int compare(final Recognition lhs, final Recognition rhs) {
-              // Intentionally reversed to put high confidence at the head of the queue.
-              return Float.compare(rhs.getConfidence(), lhs.getConfidence());
-            }
-          });
+  // IoU above which a box of the same class is suppressed.
+  protected float mNmsThresh = 0.01f;
+
+  protected static final int BATCH_SIZE = 1;
+  protected static final int PIXEL_SIZE = 3;
+
+  // Input value for every 8-bit channel value, normalized for float models and requantized with
+  // the input tensor's scale and zero point for quantized models.
+  private float[] floatLookup;
+  private byte[] quantizedLookup;
+
+  private void buildInputLookup(Tensor input) {
+    if (isModelQuantized) {
+      final float scale = input.quantizationParams().getScale();
+      final int zeroPoint = input.quantizationParams().getZeroPoint();
+      final int min = input.dataType() == DataType.INT8 ? -128 : 0;
+      final int max = min + 255;
+      quantizedLookup = new byte[256];
+      for (int v = 0; v < 256; v++) {
+        int q = Math.round(((v - IMAGE_MEAN) / IMAGE_STD) / scale) + zeroPoint;
+        q = q < min ? min : (q > max ? max : q);
+        quantizedLookup[v] = (byte) q;
+      }
+    } else {
+      floatLookup = new float[256];
+      for (int v = 0; v < 256; v++) {
+        floatLookup[v] = (v - IMAGE_MEAN) / IMAGE_STD;
+      }
+    }
+  }
 
-      for (int i = 0; i < list.size(); ++i) {
-        if (list.get(i).getDetectedClass() == k) {
-          pq.add(list.get(i));
+  /**
+   * Writes Image data into the pre-allocated {@link #imgData} buffer. The buffer is rewound and
+   * refilled on every call, so no memory is allocated per frame.
+   */
+  protected ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap) {
+    return convertBitmapToByteBuffer(bitmap, inputs);
+  }
+
+  private ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap, ModelInputs inputs) {
+    final int[] intValues = inputs.pixels;
+    final ByteBuffer buffer = inputs.buffer;
+    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+    buffer.rewind();
+    int pixel = 0;
+    for (int i = 0; i < inputHeight; ++i) {
+      for (int j = 0; j < inputWidth; ++j) {
+        final int val = intValues[pixel++];
+        if (isModelQuantized) {
+          buffer.put(quantizedLookup[(val >> 16) & 0xFF]);
+          buffer.put(quantizedLookup[(val >> 8) & 0xFF]);
+          buffer.put(quantizedLookup[val & 0xFF]);
+        } else {
+          buffer.putFloat(floatLookup[(val >> 16) & 0xFF]);
+          buffer.putFloat(floatLookup[(val >> 8) & 0xFF]);
+          buffer.putFloat(floatLookup[val & 0xFF]);
         }
       }
+    }
+    buffer.rewind();
+    return buffer;
+  }
 
-      //2.do non maximum suppression
-      while (pq.size() > 0) {
-        //insert detection with max confidence
-        Recognition[] a = new Recognition[pq.size()];
-        Recognition[] detections = pq.toArray(a);
-        Recognition max = detections[0];
-        nmsList.add(max);
-        pq.clear();
-
-        for (int j = 1; j < detections.length; j++) {
-          Recognition detection = detections[j];
-          RectF b = detection.getLocation();
-          if (box_iou(max.getLocation(), b) < mNmsThresh) {
-            pq.add(detection);
-          }
+  // Model input and YOLO outputs of recognizeImage / recognizeYuv, bound once and reused for
+  // every frame.
+  private ModelInputs inputs;
+  private BoundOutputs boundOutputs;
+
+  private boolean objectnessFirst = true;
+  // Largest raw class score the model outputs, from the sidecar config; unbounded if not given.
+  private float classScoreMax = Float.POSITIVE_INFINITY;
+
+  /**
+   * Reads anchors, masks and the optional xyscale from the sidecar asset next to the model, e.g.
+   * {@code yolov4-tiny.json} for {@code yolov4-tiny.tflite}:
+   * <pre>
+   * {"anchors": [10,14, 23,27, 37,58, 81,82, 135,169, 344,319], "masks": [[3,4,5], [1,2,3]]}
+   * </pre>
+   * An optional {@code "classScoreMax": 1} declares that the class outputs are probabilities, which
+   * lets float models reject cells on objectness alone. Keeps the built-in YOLOv4 anchors when
+   * there is no sidecar.
+   */
+  private void loadAnchorConfig(AssetManager assetManager, String modelFilename) throws IOException {
+    final String configFilename = modelFilename.replaceAll("\\.tflite$", "") + ".json";
+    final StringBuilder json = new StringBuilder();
+    try {
+      BufferedReader br = new BufferedReader(new InputStreamReader(assetManager.open(configFilename)));
+      String line;
+      while ((line = br.readLine()) != null) {
+        json.append(line);
+      }
+      br.close();
+    } catch (FileNotFoundException e) {
+      LOGGER.i("No anchor config %s, using defaults", configFilename);
+      return;
+    }
+
+    try {
+      final JSONObject config = new JSONObject(json.toString());
+      final JSONArray anchorsJson = config.getJSONArray("anchors");
+      anchors = new float[anchorsJson.length()];
+      for (int i = 0; i < anchors.length; i++) {
+        anchors[i] = (float) anchorsJson.getDouble(i);
+      }
+      final JSONArray masksJson = config.getJSONArray("masks");
+      masks = new int[masksJson.length()][];
+      for (int i = 0; i < masks.length; i++) {
+        final JSONArray mask = masksJson.getJSONArray(i);
+        masks[i] = new int[mask.length()];
+        for (int b = 0; b < masks[i].length; b++) {
+          masks[i][b] = mask.getInt(b);
+        }
+      }
+      final JSONArray xyScaleJson = config.optJSONArray("xyscale");
+      if (xyScaleJson != null) {
+        xyScale = new float[xyScaleJson.length()];
+        for (int i = 0; i < xyScale.length; i++) {
+          xyScale[i] = (float) xyScaleJson.getDouble(i);
         }
       }
+      classScoreMax = (float) config.optDouble("classScoreMax", Float.POSITIVE_INFINITY);
+    } catch (JSONException e) {
+      throw new IOException("Invalid anchor config " + configFilename, e);
     }
-    return nmsList;
   }
 
-  protected float mNmsThresh = 0.01f;
+  /**
+   * A model input buffer with the scratch state of the preprocessing that fills it, so that
+   * inputs of different pipelines can be filled at the same time.
+   */
+  private static final class ModelInputs implements Classifier.Inputs {
+    final ByteBuffer buffer;
+    // The buffer as the interpreter's input array.
+    final Object[] array;
+    // Bitmap path: the pixels of the bitmap being written.
+    final int[] pixels;
+    final YuvSampler sampler = new YuvSampler();
+
+    ModelInputs(final ByteBuffer buffer, final int[] pixels) {
+      this.buffer = buffer;
+      this.array = new Object[]{buffer};
+      this.pixels = pixels;
+    }
+  }
 
-  protected float box_iou(RectF a, RectF b) {
-    return box_intersection(a, b) / box_union(a, b);
+  /**
+   * One set of {@link YoloOutput}s, one per YOLO output, with the map handed to the interpreter,
+   * the decode settings of its pipeline and the scratch state of decoding them.
+   */
+  private static final class BoundOutputs implements Classifier.Outputs {
+    final YoloOutput[] outputs;
+    final Map<Integer, Object> map = new HashMap<>();
+    // Which classes are reported, or null for all.
+    final boolean[] active;
+    final boolean useFastMath;
+    final NonMaxSuppression nms;
+    // Class scores of the cell being decoded.
+    final float[] classScores;
+    // Whether an inference wrote the buffers; a closed classifier leaves them unwritten.
+    boolean valid;
+
+    BoundOutputs(final YoloOutput[] outputs, final boolean[] active, final boolean useFastMath,
+                 final float nmsThreshold) {
+      this.outputs = outputs;
+      this.active = active;
+      this.useFastMath = useFastMath;
+      int maxClasses = 0;
+      for (int i = 0; i < outputs.length; i++) {
+        map.put(i, outputs[i].rewind());
+        maxClasses = Math.max(maxClasses, outputs[i].channels - 5);
+      }
+      nms = new NonMaxSuppression(nmsThreshold);
+      classScores = new float[maxClasses];
+    }
+
+    void rewind() {
+      for (YoloOutput out : outputs) {
+        out.rewind();
+      }
+    }
   }
 
-  protected float box_intersection(RectF a, RectF b) {
-    float w = overlap((a.left + a.right) / 2, a.right - a.left,
-      (b.left + b.right) / 2, b.right - b.left);
-    float h = overlap((a.top + a.bottom) / 2, a.bottom - a.top,
-      (b.top + b.bottom) / 2, b.bottom - b.top);
-    if (w < 0 || h < 0) return 0;
-    float area = w * h;
-    return area;
+  /**
+   * Binds one {@link YoloOutput} per YOLO output, sized from the interpreter's own output tensor
+   * shapes.
+   */
+  private void bindOutputs() {
+    boundOutputs = newBoundOutputs(null, false);
+    for (int i = 0; i < boundOutputs.outputs.length; i++) {
+      final YoloOutput out = boundOutputs.outputs[i];
+      if (out.boxesPerBlock != masks[i].length) {
+        throw new IllegalStateException("Output " + i + " has " + out.boxesPerBlock
+          + " boxes per cell, the anchor mask has " + masks[i].length);
+      }
+      final Tensor tensor = tfLite.getOutputTensor(i);
+      LOGGER.i("Output %d shape: %s type: %s", i, Arrays.toString(tensor.shape()), tensor.dataType());
+    }
   }
 
-  protected float box_union(RectF a, RectF b) {
-    float i = box_intersection(a, b);
-    float u = (a.right - a.left) * (a.bottom - a.top) + (b.right - b.left) * (b.bottom - b.top) - i;
-    return u;
+  private BoundOutputs newBoundOutputs(final boolean[] active, final boolean useFastMath) {
+    final YoloOutput[] outputs = new YoloOutput[
+      Math.min(DECODED_OUTPUTS, Math.min(tfLite.getOutputTensorCount(), masks.length))];
+    for (int i = 0; i < outputs.length; i++) {
+      outputs[i] = new YoloOutput(tfLite.getOutputTensor(i));
+      outputs[i].setObjectnessThreshold(getObjThresh(), classScoreMax);
+    }
+    return new BoundOutputs(outputs, active, useFastMath, mNmsThresh);
   }
 
-  protected float overlap(float x1, float w1, float x2, float w2) {
-    float l1 = x1 - w1 / 2;
-    float l2 = x2 - w2 / 2;
-    float left = l1 > l2 ? l1 : l2;
-    float r1 = x1 + w1 / 2;
-    float r2 = x2 + w2 / 2;
-    float right = r1 < r2 ? r1 : r2;
-    return right - left;
+  /**
+   * Enables or disables rejecting anchor cells on objectness alone, before their class scores
+   * are scanned. Enabled by default.
+   */
+  public void setObjectnessFirst(boolean objectnessFirst) {
+    this.objectnessFirst = objectnessFirst;
   }
 
-  protected static final int BATCH_SIZE = 1;
-  protected static final int PIXEL_SIZE = 3;
+  public synchronized ArrayList<Recognition> recognizeImage(Bitmap bitmap) {
+    if (tfLite == null) {
+      return new ArrayList<Recognition>();
+    }
+    convertBitmapToByteBuffer(bitmap, inputs);
+    invoke(inputs, boundOutputs);
+    return decode(boundOutputs, bitmap.getWidth(), bitmap.getHeight());
+  }
+
+  @Override
+  public synchronized ArrayList<Recognition> recognizeYuv(final YuvFrame frame, final Rect roi,
+                                                          final int rotation) {
+    if (tfLite == null) {
+      return new ArrayList<Recognition>();
+    }
+    preprocess(frame, roi, rotation, inputs);
+    invoke(inputs, boundOutputs);
+    return decode(boundOutputs, inputWidth, inputHeight);
+  }
+
+  @Override
+  public Classifier.Inputs newInputs() {
+    return new ModelInputs(ByteBuffer.allocateDirect(imgData.capacity()).order(ByteOrder.nativeOrder()),
+      new int[inputWidth * inputHeight]);
+  }
+
+  @Override
+  public synchronized Classifier.Outputs newOutputs() {
+    return newBoundOutputs(null, false);
+  }
+
+  @Override
+  public synchronized Classifier.Outputs newOutputs(final Collection<String> activeClasses,
+                                                    final boolean useFastMath) {
+    return newBoundOutputs(activeMask(activeClasses), useFastMath);
+  }
+
+  @Override
+  public void preprocess(final YuvFrame frame, final Rect roi, final int rotation,
+                         final Classifier.Inputs inputs) {
+    final ModelInputs model = (ModelInputs) inputs;
+    final ByteBuffer input = model.buffer;
+    model.sampler.configure(frame, roi, rotation, inputWidth, inputHeight);
+    input.rewind();
+    if (isModelQuantized) {
+      model.sampler.sample(frame, input, quantizedLookup);
+    } else {
+      model.sampler.sample(frame, input, floatLookup);
+    }
+    input.rewind();
+  }
+
+  @Override
+  public void preprocess(final Bitmap bitmap, final Classifier.Inputs inputs) {
+    convertBitmapToByteBuffer(bitmap, (ModelInputs) inputs);
+  }
 
   /**
-   * Writes Image data into a {@code ByteBuffer}.
+   * Holds the classifier lock, like every other use of the interpreter. The stages before and
+   * after it don't: they only touch the scratch state of their own inputs or outputs.
    */
-  protected ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap) {
-    ByteBuffer byteBuffer = ByteBuffer.allocateDirect(4 * BATCH_SIZE * INPUT_SIZE * INPUT_SIZE * PIXEL_SIZE);
-    byteBuffer.order(ByteOrder.nativeOrder());
-    int[] intValues = new int[INPUT_SIZE * INPUT_SIZE];
-    bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-    int pixel = 0;
-    for (int i = 0; i < INPUT_SIZE; ++i) {
-      for (int j = 0; j < INPUT_SIZE; ++j) {
-        final int val = intValues[pixel++];
-        byteBuffer.putFloat(((val >> 16) & 0xFF) / 255.0f);
-        byteBuffer.putFloat(((val >> 8) & 0xFF) / 255.0f);
-        byteBuffer.putFloat((val & 0xFF) / 255.0f);
-      }
+  @Override
+  public synchronized void invoke(final Classifier.Inputs inputs, final Classifier.Outputs outputs) {
+    final BoundOutputs bound = (BoundOutputs) outputs;
+    bound.valid = tfLite != null;
+    if (!bound.valid) {
+      return;
+    }
+    bound.rewind();
+    tfLite.runForMultipleInputsOutputs(((ModelInputs) inputs).array, bound.map);
+  }
+
+  @Override
+  public ArrayList<Recognition> decode(final Classifier.Outputs outputs) {
+    return decode((BoundOutputs) outputs, inputWidth, inputHeight);
+  }
+
+  /**
+   * Decodes the boxes of a finished inference, clamped to the given image size.
+   */
+  private ArrayList<Recognition> decode(final BoundOutputs bound, final int imageWidth,
+                                        final int imageHeight) {
+    if (!bound.valid) {
+      return new ArrayList<Recognition>();
     }
-    return byteBuffer;
-  }
-
-  private float[][][][][] outputLocations;
-  // outputClasses: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the classes of detected boxes
-  private float[][][][][] outputClasses;
-  // outputScores: array of shape [Batchsize, NUM_DETECTIONS]
-  // contains the scores of detected boxes
-  private float[][][][][] outputScores;
-  // numDetections: array of shape [Batchsize]
-  // contains the number of detected boxes
-  private float[][][][][] numDetections;
-  private static final int NUM_DETECTIONS = 10;
-  public ArrayList<Recognition> recognizeImage(Bitmap bitmap) {
-    ByteBuffer byteBuffer = convertBitmapToByteBuffer(bitmap);
-
-        /*Map<Integer, Object> outputMap = new HashMap<>();
-        for (int i = 0; i < OUTPUT_WIDTH.length; i++) {
-            float[][][][][] out = new float[1][OUTPUT_WIDTH[i]][OUTPUT_WIDTH[i]][3][5 + labels.size()];
-            outputMap.put(i, out);
-        }*/
-    outputLocations = new float[1][OUTPUT_WIDTH[0]][OUTPUT_WIDTH[0]][3][85];
-    outputClasses = new float[1][OUTPUT_WIDTH[1]][OUTPUT_WIDTH[1]][3][85];
-    outputScores = new float[1][OUTPUT_WIDTH[2]][OUTPUT_WIDTH[2]][3][85];
-    numDetections = new float[1][OUTPUT_WIDTH[2]][OUTPUT_WIDTH[2]][3][85];
-
-    Map<Integer, Object> outputMap = new HashMap<>();
-    outputMap.put(0, outputLocations);
-    outputMap.put(1, outputClasses);
-//        outputMap.put(2, outputScores);
-//        outputMap.put(3, numDetections);
-
-
-    Log.d("YoloV4Classifier", "mObjThresh: " + getObjThresh());
-
-    Object[] inputArray = {byteBuffer};
-    long tick = System.currentTimeMillis();
-    tfLite.runForMultipleInputsOutputs(inputArray, outputMap);
-    Log.d("YoloV4Classifier", "runForMultipleInputsOutputs end: " + (System.currentTimeMillis() - tick) + " ms");
-
-    ArrayList<Recognition> detections = new ArrayList<Recognition>();
-
-    for (int i = 0; i < OUTPUT_WIDTH.length; i++) {
-      int gridWidth = OUTPUT_WIDTH[i];
-      float[][][][][] out = (float[][][][][]) outputMap.get(i);
-
-      tick = System.currentTimeMillis();
-      Log.d("YoloV4Classifier", "out[" + i + "] detect start");
-      for (int y = 0; y < gridWidth; ++y) {
+    final YoloOutput[] outputs = bound.outputs;
+    final NonMaxSuppression nms = bound.nms;
+    final float[] classScores = bound.classScores;
+    final float objThresh = getObjThresh();
+    final boolean[] active = bound.active;
+    final boolean useFastMath = bound.useFastMath;
+
+    nms.clear();
+
+    for (int i = 0; i < outputs.length; i++) {
+      final YoloOutput out = outputs[i];
+      final int gridWidth = out.gridWidth;
+      final int gridHeight = out.gridHeight;
+      final int boxesPerBlock = out.boxesPerBlock;
+      final int channels = out.channels;
+      final float cellWidth = 1.0f * inputWidth / gridWidth;
+      final float cellHeight = 1.0f * inputHeight / gridHeight;
+      final float scale = xyScale != null ? xyScale[i] : 1;
+      final int numClasses = Math.min(labels.size(), channels - 5);
+
+      for (int y = 0; y < gridHeight; ++y) {
         for (int x = 0; x < gridWidth; ++x) {
-          for (int b = 0; b < NUM_BOXES_PER_BLOCK; ++b) {
-            final int offset =
-              (gridWidth * (NUM_BOXES_PER_BLOCK * (labels.size() + 5))) * y
-                + (NUM_BOXES_PER_BLOCK * (labels.size() + 5)) * x
-                + (labels.size() + 5) * b;
-
-            if (out == null) continue;
-            final float confidence = expit(out[0][y][x][b][4]);
-            int detectedClass = -1;
-            float maxClass = 0;
+          for (int b = 0; b < boxesPerBlock; ++b) {
+            final int offset = ((y * gridWidth + x) * boxesPerBlock + b) * channels;
 
-            final float[] classes = new float[labels.size()];
-            for (int c = 0; c < labels.size(); ++c) {
-              classes[c] = out[0][y][x][b][5 + c];
+            // Cells whose objectness keeps them below the threshold whatever their class scores,
+            // see YoloOutput.setObjectnessThreshold, are rejected before any class score is read.
+            if (objectnessFirst && out.rejects(offset + 4)) {
+              continue;
             }
 
-            for (int c = 0; c < labels.size(); ++c) {
-              if (classes[c] > maxClass) {
+            final float objectness = out.get(offset + 4);
+            final float confidence = useFastMath ? FastMath.sigmoid(objectness) : expit(objectness);
+            int detectedClass = -1;
+            float maxClass = 0;
+
+            out.get(offset + 5, classScores, numClasses);
+            for (int c = 0; c < numClasses; ++c) {
+              if (classScores[c] > maxClass) {
                 detectedClass = c;
-                maxClass = classes[c];
+                maxClass = classScores[c];
               }
             }
 
             final float confidenceInClass = maxClass * confidence;
-            if (confidenceInClass > getObjThresh()) {
-//                            final float xPos = (x + (expit(out[0][y][x][b][0]) * XYSCALE[i]) - (0.5f * (XYSCALE[i] - 1))) * (INPUT_SIZE / gridWidth);
-//                            final float yPos = (y + (expit(out[0][y][x][b][1]) * XYSCALE[i]) - (0.5f * (XYSCALE[i] - 1))) * (INPUT_SIZE / gridWidth);
-
-              final float xPos = (x + expit(out[0][y][x][b][0])) * (1.0f * INPUT_SIZE / gridWidth);
-              final float yPos = (y + expit(out[0][y][x][b][1])) * (1.0f * INPUT_SIZE / gridWidth);
+            // The best class wins the cell even if it is inactive; then nothing is reported.
+            if (confidenceInClass > objThresh && (active == null || active[detectedClass])) {
+              final float sigX;
+              final float sigY;
+              final float expW;
+              final float expH;
+              if (useFastMath) {
+                sigX = FastMath.sigmoid(out.get(offset));
+                sigY = FastMath.sigmoid(out.get(offset + 1));
+                expW = FastMath.exp(out.get(offset + 2));
+                expH = FastMath.exp(out.get(offset + 3));
+              } else {
+                sigX = expit(out.get(offset));
+                sigY = expit(out.get(offset + 1));
+                expW = (float) Math.exp(out.get(offset + 2));
+                expH = (float) Math.exp(out.get(offset + 3));
+              }
 
-              final float w = (float) (Math.exp(out[0][y][x][b][2]) * ANCHORS[2 * MASKS[i][b]]);
-              final float h = (float) (Math.exp(out[0][y][x][b][3]) * ANCHORS[2 * MASKS[i][b] + 1]);
+              final float xPos = (x + sigX * scale - 0.5f * (scale - 1)) * cellWidth;
+              final float yPos = (y + sigY * scale - 0.5f * (scale - 1)) * cellHeight;
+              final float w = expW * anchors[2 * masks[i][b]];
+              final float h = expH * anchors[2 * masks[i][b] + 1];
 
-              final RectF rect = new RectF(
+              nms.add(offset, detectedClass, confidenceInClass,
                 Math.max(0, xPos - w / 2),
                 Math.max(0, yPos - h / 2),
-                Math.min(bitmap.getWidth() - 1, xPos + w / 2),
-                Math.min(bitmap.getHeight() - 1, yPos + h / 2)
-              );
-              detections.add(new Recognition("" + offset, labels.get(detectedClass),
-                confidenceInClass, rect, detectedClass));
+                Math.min(imageWidth - 1, xPos + w / 2),
+                Math.min(imageHeight - 1, yPos + h / 2));
             }
           }
         }
       }
-      Log.d("YoloV4Classifier", "out[" + i + "] detect end " + (System.currentTimeMillis() - tick) + " ms");
     }
 
-    final ArrayList<Recognition> recognitions = nms(detections);
+    final int keptCount = nms.run();
+    final ArrayList<Recognition> recognitions = new ArrayList<Recognition>(keptCount);
+    for (int n = 0; n < keptCount; n++) {
+      final int k = nms.kept(n);
+      final int detectedClass = nms.getDetectedClass(k);
+      final RectF rect = new RectF(nms.getLeft(k), nms.getTop(k), nms.getRight(k), nms.getBottom(k));
+      recognitions.add(new Recognition("" + nms.getId(k), labels.get(detectedClass),
+        nms.getScore(k), rect, detectedClass));
+    }
 
     return recognitions;
   }
@@ -0,0 +1,204 @@
+package com.cordovaplugintflite;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link DetectionPipeline} with stages that only sleep, and checks that frames complete at
+ * the rate of the slowest stage rather than the sum of all three.
+ */
+public class DetectionPipelineTest {
+
+  private static final long PREPROCESS_MS = 20;
+  private static final long INVOKE_MS = 40;
+  private static final long DECODE_MS = 20;
+  private static final long SUBMIT_INTERVAL_MS = 5;
+  private static final long WARMUP_MS = 400;
+  private static final long MEASURE_MS = 2000;
+
+  /**
+   * Sleeps for the given stage durations and counts what happens to each job.
+   */
+  private static class FakeStages implements DetectionPipeline.Stages<Integer, int[], int[]> {
+    final AtomicInteger decoded = new AtomicInteger();
+    final AtomicInteger discarded = new AtomicInteger();
+    final AtomicInteger mismatched = new AtomicInteger();
+
+    @Override
+    public void preprocess(final Integer job, final int[] input) {
+      sleep(PREPROCESS_MS);
+      input[0] = job;
+    }
+
+    @Override
+    public void invoke(final int[] input, final int[] output) {
+      sleep(INVOKE_MS);
+      output[0] = input[0];
+    }
+
+    @Override
+    public void decode(final Integer job, final int[] output) {
+      sleep(DECODE_MS);
+      if (output[0] != job) {
+        mismatched.incrementAndGet();
+      }
+      decoded.incrementAndGet();
+    }
+
+    @Override
+    public void discard(final Integer job) {
+      discarded.incrementAndGet();
+    }
+
+    private static void sleep(final long ms) {
+      try {
+        Thread.sleep(ms);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private DetectionPipeline<Integer, int[], int[]> pipeline;
+
+  @After
+  public void shutdown() {
+    if (pipeline != null) {
+      pipeline.shutdown();
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void completesAtRateOfSlowestStage() throws Exception {
+    final FakeStages stages = new FakeStages();
+    pipeline = new DetectionPipeline<>("test", stages,
+      Arrays.asList(new int[1], new int[1]), Arrays.asList(new int[1], new int[1]));
+
+    int submitted = 0;
+    long measureStart = 0;
+    int completedAtStart = 0;
+    final long start = System.currentTimeMillis();
+    long now;
+    while ((now = System.currentTimeMillis()) - start < WARMUP_MS + MEASURE_MS) {
+      if (measureStart == 0 && now - start >= WARMUP_MS) {
+        measureStart = now;
+        completedAtStart = stages.decoded.get();
+      }
+      pipeline.submit(submitted++);
+      Thread.sleep(SUBMIT_INTERVAL_MS);
+    }
+    final long measuredMs = System.currentTimeMillis() - measureStart;
+    final int completed = stages.decoded.get() - completedAtStart;
+
+    final double pipelinedRate = 1000.0 / Math.max(PREPROCESS_MS, Math.max(INVOKE_MS, DECODE_MS));
+    final double serialRate = 1000.0 / (PREPROCESS_MS + INVOKE_MS + DECODE_MS);
+    final double rate = completed * 1000.0 / measuredMs;
+    assertTrue("rate " + rate + "/s, pipelined " + pipelinedRate + "/s", rate >= 0.8 * pipelinedRate);
+    assertTrue("rate " + rate + "/s, serial " + serialRate + "/s", rate >= 1.5 * serialRate);
+    assertTrue("rate " + rate + "/s above the slowest stage", rate <= 1.05 * pipelinedRate);
+
+    // Once the last job drained, each one was decoded or discarded, exactly once.
+    final long deadline = System.currentTimeMillis() + 5000;
+    while (stages.decoded.get() + stages.discarded.get() < submitted
+      && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(submitted, stages.decoded.get() + stages.discarded.get());
+    assertEquals(stages.decoded.get(), pipeline.getCompleted());
+    assertEquals(stages.discarded.get(), pipeline.getDiscarded());
+    assertEquals(0, stages.mismatched.get());
+    assertEquals(0, pipeline.getQueueDepth());
+  }
+
+  /**
+   * Blocks one stage until released, ignoring interrupts as the native interpreter does, so
+   * that shutdown() interrupts the stage thread while it holds a job.
+   */
+  private static final class BlockingStages extends FakeStages {
+    final boolean blockInvoke;
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    BlockingStages(final boolean blockInvoke) {
+      this.blockInvoke = blockInvoke;
+    }
+
+    @Override
+    public void preprocess(final Integer job, final int[] input) {
+      if (!blockInvoke) block();
+      input[0] = job;
+    }
+
+    @Override
+    public void invoke(final int[] input, final int[] output) {
+      if (blockInvoke) block();
+      output[0] = input[0];
+    }
+
+    private void block() {
+      entered.countDown();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          release.await();
+          break;
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void discardsJobInPreprocessAtShutdown() throws Exception {
+    assertShutdownDuringStageDiscards(new BlockingStages(false));
+  }
+
+  @Test(timeout = 10000)
+  public void discardsJobInInvokeAtShutdown() throws Exception {
+    assertShutdownDuringStageDiscards(new BlockingStages(true));
+  }
+
+  private void assertShutdownDuringStageDiscards(final BlockingStages stages) throws Exception {
+    pipeline = new DetectionPipeline<>("test", stages,
+      Arrays.asList(new int[1], new int[1]), Arrays.asList(new int[1], new int[1]));
+    pipeline.submit(1);
+    stages.entered.await();
+
+    pipeline.shutdown();
+    stages.release.countDown();
+
+    // The stage finishes its job, then finds the next queue interrupted and must discard it.
+    while (stages.decoded.get() + stages.discarded.get() < 1) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+    assertEquals(0, stages.decoded.get());
+    assertEquals(1, stages.discarded.get());
+    assertEquals(1, pipeline.getDiscarded());
+    assertEquals(0, pipeline.getQueueDepth());
+  }
+
+  @Test(timeout = 10000)
+  public void discardsJobsAfterShutdown() {
+    final FakeStages stages = new FakeStages();
+    pipeline = new DetectionPipeline<>("test", stages,
+      Arrays.asList(new int[1], new int[1]), Arrays.asList(new int[1], new int[1]));
+    pipeline.shutdown();
+
+    pipeline.submit(1);
+
+    assertEquals(1, stages.discarded.get());
+    assertEquals(0, pipeline.getQueueDepth());
+  }
+}
@@ -0,0 +1,115 @@
+package com.cordovaplugintflite;
+
+import android.os.PowerManager;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives {@link InferenceScheduler} with a fake clock.
+ */
+public class InferenceSchedulerTest {
+
+  private static final class FakeClock implements InferenceScheduler.Clock {
+    long now = 10000;
+
+    @Override
+    public long uptimeMillis() {
+      return now;
+    }
+  }
+
+  private final FakeClock clock = new FakeClock();
+
+  @Test
+  public void firstDetectionIsDueImmediately() {
+    assertTrue(new InferenceScheduler(10, clock).isDue());
+  }
+
+  @Test
+  public void startsAreSpacedByBudget() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    scheduler.onInferenceStart();
+    scheduler.onInferenceDone(20, null);
+
+    assertEquals(100, scheduler.getIntervalMs());
+    clock.now += 99;
+    assertFalse(scheduler.isDue());
+    clock.now += 1;
+    assertTrue(scheduler.isDue());
+  }
+
+  @Test
+  public void onlyStartedDetectionsUseUpBudget() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    // Frames dropped by the gates are never reported, so every one of them stays due.
+    for (int frame = 0; frame < 10; frame++) {
+      assertTrue(scheduler.isDue());
+      clock.now += 33;
+    }
+    scheduler.onInferenceStart();
+    assertFalse(scheduler.isDue());
+  }
+
+  @Test
+  public void slowInferenceWidensInterval() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    scheduler.onInferenceStart();
+    scheduler.onInferenceDone(200, null);
+
+    assertEquals((long) (200 / InferenceScheduler.MAX_DUTY), scheduler.getIntervalMs());
+  }
+
+  @Test
+  public void latencyIsSmoothed() {
+    final InferenceScheduler scheduler = new InferenceScheduler(0, clock);
+    scheduler.onInferenceDone(100, null);
+    scheduler.onInferenceDone(200, null);
+
+    // 100 + 0.3 * (200 - 100) = 130 ms, at most half of the time busy.
+    assertEquals(260, scheduler.getIntervalMs());
+  }
+
+  @Test
+  public void idlesOnStableDetectionAndBurstsOnChange() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    for (int i = 0; i < InferenceScheduler.STABLE_DETECTIONS - 1; i++) {
+      scheduler.onInferenceDone(20, "card");
+      assertEquals(InferenceScheduler.State.BURST, scheduler.getState());
+    }
+    scheduler.onInferenceDone(20, "card");
+    assertEquals(InferenceScheduler.State.IDLE, scheduler.getState());
+    assertEquals(InferenceScheduler.IDLE_INTERVAL_MS, scheduler.getIntervalMs());
+
+    scheduler.onInferenceDone(20, "passport");
+    assertEquals(InferenceScheduler.State.BURST, scheduler.getState());
+    assertEquals(100, scheduler.getIntervalMs());
+  }
+
+  @Test
+  public void lostDetectionLeavesIdle() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    for (int i = 0; i < InferenceScheduler.STABLE_DETECTIONS; i++) {
+      scheduler.onInferenceDone(20, "card");
+    }
+    scheduler.onInferenceDone(20, null);
+
+    assertEquals(InferenceScheduler.State.BURST, scheduler.getState());
+  }
+
+  @Test
+  public void backsOffWithThermalStatus() {
+    final InferenceScheduler scheduler = new InferenceScheduler(10, clock);
+    scheduler.setThermalStatus(PowerManager.THERMAL_STATUS_LIGHT);
+    assertEquals(100, scheduler.getIntervalMs());
+    scheduler.setThermalStatus(PowerManager.THERMAL_STATUS_MODERATE);
+    assertEquals(200, scheduler.getIntervalMs());
+    scheduler.setThermalStatus(PowerManager.THERMAL_STATUS_SEVERE);
+    assertEquals(400, scheduler.getIntervalMs());
+    scheduler.setThermalStatus(PowerManager.THERMAL_STATUS_CRITICAL);
+    assertEquals(800, scheduler.getIntervalMs());
+  }
+}
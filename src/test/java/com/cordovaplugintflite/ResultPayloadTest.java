@@ -0,0 +1,56 @@
+package com.cordovaplugintflite;
+
+import org.junit.Test;
+
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the bridge message sizes reported as {@code resultPayloadBytes} for each result
+ * transport against the messages Cordova sends.
+ */
+public class ResultPayloadTest {
+
+  private static final int[] CAPTURE_BYTES = {1, 2, 3, 1000, 200000};
+
+  @Test
+  public void base64IsTheEncodedStringInAnArray() {
+    for (int length : CAPTURE_BYTES) {
+      final String value = Base64.getEncoder().encodeToString(capture(length));
+      assertEquals("length " + length, message(value).length(), ResultPayload.stringBytes(value));
+    }
+  }
+
+  @Test
+  public void arrayBufferIsBase64OfTheBytes() {
+    for (int length : CAPTURE_BYTES) {
+      assertEquals("length " + length,
+        Base64.getEncoder().encodeToString(capture(length)).length(),
+        ResultPayload.binaryBytes(length));
+    }
+  }
+
+  @Test
+  public void urlDoesNotGrowWithTheCapture() {
+    final String value = "https://localhost/cpcp_results/result_1700000000000_12.jpg";
+    final int bytes = ResultPayload.stringBytes(value);
+
+    assertEquals(message(value).length(), bytes);
+    assertTrue(bytes + " bytes", bytes < 100);
+    assertTrue(bytes < ResultPayload.binaryBytes(CAPTURE_BYTES[3]));
+  }
+
+  /** The message Android's org.json writes for a one-string array, escaping '/'. */
+  private static String message(final String value) {
+    return "[\"" + value.replace("/", "\\/") + "\"]";
+  }
+
+  private static byte[] capture(final int length) {
+    final byte[] data = new byte[length];
+    new Random(length).nextBytes(data);
+    return data;
+  }
+}
@@ -0,0 +1,122 @@
+package com.cordovaplugintflite;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stores captures in a temporary directory and checks what {@link ResultStore} keeps.
+ */
+public class ResultStoreTest {
+
+  @Rule
+  public final TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void returnsFileUrlOfStoredBytes() throws Exception {
+    final ResultStore store = new ResultStore(new File(temp.getRoot(), "results"));
+    final byte[] data = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3};
+
+    final String url = store.put(data);
+
+    assertTrue(url, url.startsWith("file:///"));
+    assertTrue(url, url.endsWith(".jpg"));
+    assertArrayEquals(data, Files.readAllBytes(toFile(url).toPath()));
+  }
+
+  @Test
+  public void findsStoredCaptureByTheNameInItsUrl() throws Exception {
+    final ResultStore store = new ResultStore(temp.newFolder("results"),
+      "https://localhost/cpcp_results/");
+    final byte[] data = {(byte) 0xFF, (byte) 0xD8, 1, 2, 3};
+
+    final String url = store.put(data);
+    final String name = url.substring("https://localhost/cpcp_results/".length());
+
+    assertTrue(url, url.startsWith("https://localhost/cpcp_results/result_"));
+    assertArrayEquals(data, Files.readAllBytes(store.find(name).toPath()));
+  }
+
+  @Test
+  public void findsOnlyCurrentEntries() throws Exception {
+    final File directory = temp.newFolder("results");
+    final ResultStore store = new ResultStore(directory, "");
+    final String evicted = store.put(new byte[]{0});
+    for (int i = 0; i < ResultStore.MAX_ENTRIES; i++) {
+      store.put(new byte[]{1});
+    }
+    final File outside = temp.newFile("outside.jpg");
+
+    assertNull(store.find(evicted));
+    assertNull(store.find("../" + outside.getName()));
+    assertNull(store.find("missing.jpg"));
+  }
+
+  @Test
+  public void keepsNewestEntries() throws Exception {
+    final File directory = temp.newFolder("results");
+    final ResultStore store = new ResultStore(directory);
+    final List<File> files = new ArrayList<>();
+    for (int i = 0; i < ResultStore.MAX_ENTRIES + 3; i++) {
+      files.add(toFile(store.put(new byte[]{(byte) i})));
+    }
+
+    assertEquals(ResultStore.MAX_ENTRIES, directory.listFiles().length);
+    for (int i = 0; i < files.size(); i++) {
+      assertEquals("entry " + i, i >= 3, files.get(i).exists());
+    }
+  }
+
+  @Test
+  public void everyCaptureGetsItsOwnFile() throws Exception {
+    final ResultStore store = new ResultStore(temp.newFolder("results"));
+
+    final String first = store.put(new byte[]{1});
+    final String second = store.put(new byte[]{2});
+
+    assertFalse(first.equals(second));
+    assertArrayEquals(new byte[]{1}, Files.readAllBytes(toFile(first).toPath()));
+  }
+
+  @Test
+  public void clearDeletesEverything() throws Exception {
+    final File directory = temp.newFolder("results");
+    final ResultStore store = new ResultStore(directory);
+    store.put(new byte[]{1});
+    store.put(new byte[]{2});
+
+    store.clear();
+
+    assertEquals(0, directory.listFiles().length);
+  }
+
+  @Test
+  public void deletesFilesOfPreviousProcess() throws Exception {
+    final File directory = temp.newFolder("results");
+    final File leftover = new File(directory, "result_leftover.jpg");
+    try (FileOutputStream out = new FileOutputStream(leftover)) {
+      out.write(1);
+    }
+
+    new ResultStore(directory);
+
+    assertFalse(leftover.exists());
+  }
+
+  private static File toFile(final String url) {
+    return new File(URI.create(url));
+  }
+}
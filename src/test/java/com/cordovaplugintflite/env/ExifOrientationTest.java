@@ -0,0 +1,106 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Parses the APP1 segment {@link ExifOrientation#stamp} inserts into a JPEG encoded by ImageIO,
+ * which starts with a JFIF APP0 segment as the Android encoder's output does.
+ */
+public class ExifOrientationTest {
+
+  @Test
+  public void stampsOrientationAfterJfif() throws IOException {
+    final byte[] jpeg = encode(64, 48);
+    assertEquals(0xE0, jpeg[3] & 0xFF);
+    final int app1 = 4 + u16(jpeg, 4);
+
+    for (final int[] expected : new int[][]{{0, 1}, {90, 6}, {180, 3}, {270, 8}, {-90, 8}, {450, 6}}) {
+      final byte[] stamped = ExifOrientation.stamp(jpeg, expected[0]);
+
+      assertEquals(jpeg.length + 36, stamped.length);
+      assertArrayEquals(Arrays.copyOf(jpeg, app1), Arrays.copyOf(stamped, app1));
+      assertEquals(expected[0] + " degrees", expected[1], orientation(stamped, app1));
+      assertArrayEquals(Arrays.copyOfRange(jpeg, app1, jpeg.length),
+        Arrays.copyOfRange(stamped, app1 + 36, stamped.length));
+      assertNotNull(ImageIO.read(new ByteArrayInputStream(stamped)));
+    }
+  }
+
+  @Test
+  public void stampsOrientationAfterSoiWithoutJfif() throws IOException {
+    final byte[] jpeg = encode(16, 16);
+    final int app0End = 4 + u16(jpeg, 4);
+    // SOI followed directly by the segments after APP0.
+    final byte[] bare = new byte[jpeg.length - (app0End - 2)];
+    bare[0] = (byte) 0xFF;
+    bare[1] = (byte) 0xD8;
+    System.arraycopy(jpeg, app0End, bare, 2, jpeg.length - app0End);
+
+    assertEquals(6, orientation(ExifOrientation.stamp(bare, 90), 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonJpeg() {
+    ExifOrientation.stamp(new byte[]{(byte) 0x89, 'P', 'N', 'G'}, 90);
+  }
+
+  /**
+   * Reads the APP1 segment at {@code offset} as EXIF and returns the orientation of IFD0.
+   */
+  private static int orientation(final byte[] jpeg, final int offset) {
+    assertEquals(0xFF, jpeg[offset] & 0xFF);
+    assertEquals(0xE1, jpeg[offset + 1] & 0xFF);
+    final int length = u16(jpeg, offset + 2);
+    assertEquals("Exif\0\0", new String(jpeg, offset + 4, 6, StandardCharsets.US_ASCII));
+    final int tiff = offset + 10;
+    assertEquals("MM", new String(jpeg, tiff, 2, StandardCharsets.US_ASCII));
+    assertEquals(42, u16(jpeg, tiff + 2));
+    final int ifd = tiff + u32(jpeg, tiff + 4);
+    final int entries = u16(jpeg, ifd);
+    // Every IFD0 byte, through the next-IFD offset, lies inside the segment.
+    assertEquals(offset + 2 + length, ifd + 2 + 12 * entries + 4);
+    assertEquals(0, u32(jpeg, ifd + 2 + 12 * entries));
+    for (int e = 0; e < entries; e++) {
+      final int entry = ifd + 2 + 12 * e;
+      if (u16(jpeg, entry) == 0x0112) {
+        assertEquals("SHORT", 3, u16(jpeg, entry + 2));
+        assertEquals("count", 1, u32(jpeg, entry + 4));
+        return u16(jpeg, entry + 8);
+      }
+    }
+    throw new AssertionError("No orientation tag");
+  }
+
+  private static byte[] encode(final int width, final int height) throws IOException {
+    final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        image.setRGB(x, y, x * 4 << 16 | y * 4 << 8);
+      }
+    }
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "jpg", out);
+    return out.toByteArray();
+  }
+
+  private static int u16(final byte[] b, final int i) {
+    return (b[i] & 0xFF) << 8 | (b[i + 1] & 0xFF);
+  }
+
+  private static int u32(final byte[] b, final int i) {
+    return u16(b, i) << 16 | u16(b, i + 2);
+  }
+}
@@ -0,0 +1,77 @@
+package com.cordovaplugintflite.env;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link FastMath} against the exact functions the decoder uses otherwise, over 1024 arguments in
+ * the range of raw YOLO outputs. Decode as a whole is measured by DecodeBenchmark.
+ *
+ * <pre>mvn -B -Pbenchmark test-compile exec:exec -Djmh.args=FastMathBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+  private final float[] args = new float[1024];
+
+  @Setup
+  public void setUp() {
+    final Random random = new Random(1);
+    for (int i = 0; i < args.length; i++) {
+      args[i] = random.nextFloat() * 16 - 8;
+    }
+  }
+
+  @Benchmark
+  public float exactExp() {
+    float sum = 0;
+    for (float x : args) {
+      sum += (float) Math.exp(x);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public float fastExp() {
+    float sum = 0;
+    for (float x : args) {
+      sum += FastMath.exp(x);
+    }
+    return sum;
+  }
+
+  /** The expit of {@link Utils}, which the decoder uses without fast math. */
+  @Benchmark
+  public float exactSigmoid() {
+    float sum = 0;
+    for (float x : args) {
+      sum += (float) (1. / (1. + Math.exp(-x)));
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public float fastSigmoid() {
+    float sum = 0;
+    for (float x : args) {
+      sum += FastMath.sigmoid(x);
+    }
+    return sum;
+  }
+}
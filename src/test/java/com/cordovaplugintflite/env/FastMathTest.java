@@ -0,0 +1,50 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the error bounds documented on {@link FastMath} against {@link Math#exp(double)}.
+ */
+public class FastMathTest {
+
+  private static final int STEPS = 2000000;
+
+  @Test
+  public void expIsWithinRelativeBound() {
+    double worst = 0;
+    for (int i = 0; i <= STEPS; i++) {
+      final float x = -87f + 175f * i / STEPS;
+      final double expected = Math.exp(x);
+      worst = Math.max(worst, Math.abs(FastMath.exp(x) - expected) / expected);
+    }
+    assertTrue("relative error " + worst, worst < 5e-7);
+  }
+
+  @Test
+  public void expIsExactAtZero() {
+    assertEquals(1f, FastMath.exp(0f), 0f);
+  }
+
+  @Test
+  public void expClampsOutOfRangeArguments() {
+    assertEquals(FastMath.exp(88f), FastMath.exp(1000f), 0f);
+    assertEquals(FastMath.exp(-87f), FastMath.exp(-1000f), 0f);
+    assertFalse(Float.isInfinite(FastMath.exp(Float.MAX_VALUE)));
+    assertTrue(FastMath.exp(-Float.MAX_VALUE) >= Float.MIN_NORMAL);
+  }
+
+  @Test
+  public void sigmoidIsWithinAbsoluteBound() {
+    double worst = 0;
+    for (int i = 0; i <= STEPS; i++) {
+      final float x = -100f + 200f * i / STEPS;
+      final double expected = 1 / (1 + Math.exp(-(double) x));
+      worst = Math.max(worst, Math.abs(FastMath.sigmoid(x) - expected));
+    }
+    assertTrue("absolute error " + worst, worst < 2e-7);
+  }
+}
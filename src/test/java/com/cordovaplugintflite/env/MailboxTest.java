@@ -0,0 +1,113 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hands numbered items from a producer to a consumer thread through a {@link Mailbox} and checks
+ * that every item ends up with exactly one of them, and that the consumer never goes back in time.
+ */
+public class MailboxTest {
+
+  private static final int ITEMS = 1000000;
+
+  private static final class Item {
+    final int sequence;
+    // 0 while in flight, then 1 when recycled by the producer or 2 when taken by the consumer.
+    int owner;
+
+    Item(final int sequence) {
+      this.sequence = sequence;
+    }
+  }
+
+  @Test
+  public void offerReplacesUntakenItem() {
+    final Mailbox<String> mailbox = new Mailbox<>();
+    assertTrue(mailbox.isEmpty());
+    assertNull(mailbox.offer("a"));
+    assertSame("a", mailbox.offer("b"));
+    assertSame("b", mailbox.take());
+    assertNull(mailbox.take());
+    assertTrue(mailbox.isEmpty());
+  }
+
+  @Test(timeout = 60000)
+  public void everyItemIsOwnedOnceAcrossThreads() throws Exception {
+    final Mailbox<Item> mailbox = new Mailbox<>();
+    final Item[] items = new Item[ITEMS];
+    for (int i = 0; i < ITEMS; i++) {
+      items[i] = new Item(i);
+    }
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    final Thread producer = new Thread(() -> {
+      try {
+        start.await();
+        for (final Item item : items) {
+          final Item replaced = mailbox.offer(item);
+          if (replaced != null) {
+            claim(replaced, 1);
+          }
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    });
+    final Thread consumer = new Thread(() -> {
+      try {
+        start.await();
+        int last = -1;
+        while (last < ITEMS - 1 && failure.get() == null) {
+          final Item item = mailbox.take();
+          if (item == null) {
+            continue;
+          }
+          if (item.sequence <= last) {
+            throw new AssertionError("Took " + item.sequence + " after " + last);
+          }
+          claim(item, 2);
+          last = item.sequence;
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      }
+    });
+    producer.start();
+    consumer.start();
+    start.countDown();
+    producer.join();
+    consumer.join();
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    assertTrue(mailbox.isEmpty());
+    int taken = 0;
+    for (final Item item : items) {
+      assertTrue("Item " + item.sequence + " was lost", item.owner != 0);
+      if (item.owner == 2) taken++;
+    }
+    assertTrue(taken > 0);
+    assertEquals(2, items[ITEMS - 1].owner);
+  }
+
+  /**
+   * Marks {@code item} as owned; it only reaches here through the mailbox, whose atomic swap also
+   * publishes the write of the other thread.
+   */
+  private static void claim(final Item item, final int owner) {
+    if (item.owner != 0) {
+      throw new AssertionError("Item " + item.sequence + " handed out twice");
+    }
+    item.owner = owner;
+  }
+}
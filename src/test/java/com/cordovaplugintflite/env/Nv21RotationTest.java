@@ -0,0 +1,76 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks {@link Nv21Rotation} byte for byte against the per-pixel rotateNV21 that
+ * CameraActivity used before, on random frames that are and aren't multiples of the tile size.
+ */
+public class Nv21RotationTest {
+
+  private static final int[][] SIZES = {{1280, 960}, {640, 480}, {34, 70}, {2, 2}};
+
+  @Test
+  public void matchesRotateNV21() {
+    final Random random = new Random(42);
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] nv21 = new byte[width * height * 3 / 2];
+      random.nextBytes(nv21);
+      for (final int rotation : new int[]{90, 180, 270}) {
+        final byte[] actual = new byte[nv21.length];
+        Nv21Rotation.rotate(nv21, width, height, rotation, actual);
+        assertArrayEquals(width + "x" + height + " by " + rotation,
+          rotateNV21(nv21, width, height, rotation), actual);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsOtherRotations() {
+    Nv21Rotation.rotate(new byte[6], 2, 2, 45, new byte[6]);
+  }
+
+  /** CameraActivity.rotateNV21 as it was before the tiled rotation replaced it. */
+  static byte[] rotateNV21(final byte[] yuv, final int width, final int height, final int rotation) {
+    if (rotation == 0) return yuv;
+    if (rotation % 90 != 0 || rotation < 0 || rotation > 270) {
+      throw new IllegalArgumentException("0 <= rotation < 360, rotation % 90 == 0");
+    }
+
+    final byte[] output = new byte[yuv.length];
+    final int frameSize = width * height;
+    final boolean swap = rotation % 180 != 0;
+    final boolean xflip = rotation % 270 != 0;
+    final boolean yflip = rotation >= 180;
+
+    for (int j = 0; j < height; j++) {
+      for (int i = 0; i < width; i++) {
+        final int yIn = j * width + i;
+        final int uIn = frameSize + (j >> 1) * width + (i & ~1);
+        final int vIn = uIn + 1;
+
+        final int wOut = swap ? height : width;
+        final int hOut = swap ? width : height;
+        final int iSwapped = swap ? j : i;
+        final int jSwapped = swap ? i : j;
+        final int iOut = xflip ? wOut - iSwapped - 1 : iSwapped;
+        final int jOut = yflip ? hOut - jSwapped - 1 : jSwapped;
+
+        final int yOut = jOut * wOut + iOut;
+        final int uOut = frameSize + (jOut >> 1) * wOut + (iOut & ~1);
+        final int vOut = uOut + 1;
+
+        output[yOut] = (byte) (0xff & yuv[yIn]);
+        output[uOut] = (byte) (0xff & yuv[uIn]);
+        output[vOut] = (byte) (0xff & yuv[vIn]);
+      }
+    }
+    return output;
+  }
+}
@@ -0,0 +1,99 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Acquires and releases buffers of an {@link ObjectPool} from two threads at once and checks that
+ * no buffer is ever owned by both, and that the pool only grows to what is in use at once.
+ */
+public class ObjectPoolTest {
+
+  private static final int THREADS = 2;
+  private static final int ROUNDS = 500000;
+
+  private static final class Buffer {
+    final AtomicInteger owner = new AtomicInteger();
+    final int[] data = new int[16];
+  }
+
+  @Test
+  public void reusesReleasedBuffer() {
+    final ObjectPool<Buffer> pool = new ObjectPool<>(Buffer::new, 1);
+    final Buffer first = pool.acquire();
+    final Buffer second = pool.acquire();
+    assertNotSame(first, second);
+    pool.release(first);
+    pool.release(second);
+    // Beyond maxIdle the released buffer is dropped.
+    assertSame(first, pool.acquire());
+    assertNotSame(second, pool.acquire());
+  }
+
+  @Test(timeout = 60000)
+  public void buffersAreNeverSharedAcrossThreads() throws Exception {
+    final AtomicInteger created = new AtomicInteger();
+    final ObjectPool<Buffer> pool = new ObjectPool<>(() -> {
+      created.incrementAndGet();
+      return new Buffer();
+    }, THREADS);
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 1; t <= THREADS; t++) {
+      final int id = t;
+      threads.add(new Thread(() -> {
+        try {
+          start.await();
+          for (int round = 0; round < ROUNDS && failure.get() == null; round++) {
+            final Buffer buffer = pool.acquire();
+            if (!buffer.owner.compareAndSet(0, id)) {
+              throw new AssertionError("Buffer acquired by " + id + " is owned by " + buffer.owner.get());
+            }
+            final int stamp = id * ROUNDS + round;
+            for (int i = 0; i < buffer.data.length; i++) {
+              buffer.data[i] = stamp;
+            }
+            if (round % 64 == 0) {
+              Thread.yield();
+            }
+            for (int i = 0; i < buffer.data.length; i++) {
+              if (buffer.data[i] != stamp) {
+                throw new AssertionError("Buffer written while owned by " + id);
+              }
+            }
+            buffer.owner.set(0);
+            pool.release(buffer);
+          }
+        } catch (Throwable t1) {
+          failure.compareAndSet(null, t1);
+        }
+      }));
+    }
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    start.countDown();
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    if (failure.get() != null) {
+      throw new AssertionError(failure.get());
+    }
+    // Each thread holds at most one buffer at a time and maxIdle keeps them all.
+    assertTrue("created " + created.get(), created.get() <= THREADS);
+    assertEquals(0, pool.acquire().owner.get());
+  }
+}
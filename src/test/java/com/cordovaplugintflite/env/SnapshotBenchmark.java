@@ -0,0 +1,106 @@
+package com.cordovaplugintflite.env;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Snapshot of a 1280x960 preview frame taken in portrait, before and after snapshots kept the
+ * sensor orientation: the old path rotated the NV21 frame with rotateNV21 and encoded it, the new
+ * one encodes the frame as delivered and stamps the EXIF orientation. ImageIO stands in for the
+ * Android YuvImage encoder, so only the difference between the two paths carries over; the
+ * rotation and stamp steps are also timed alone, with the tiled rotation of rotatePixels.
+ *
+ * <pre>mvn -B -Pbenchmark test-compile exec:exec -Djmh.args=SnapshotBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotBenchmark {
+
+  private static final int WIDTH = 1280;
+  private static final int HEIGHT = 960;
+  private static final int ROTATION = 90;
+
+  private byte[] nv21;
+  private byte[] rotated;
+  private byte[] jpeg;
+  private int[] argb;
+  private BufferedImage landscape;
+  private BufferedImage portrait;
+  private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  @Setup
+  public void setUp() throws IOException {
+    nv21 = new byte[WIDTH * HEIGHT * 3 / 2];
+    // A smooth gradient with some noise, so the JPEG is of a realistic size.
+    final Random random = new Random(1);
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        nv21[y * WIDTH + x] = (byte) ((x + y) / 9 + random.nextInt(8));
+      }
+    }
+    for (int i = WIDTH * HEIGHT; i < nv21.length; i++) {
+      nv21[i] = (byte) (128 + random.nextInt(8));
+    }
+    rotated = new byte[nv21.length];
+    argb = new int[WIDTH * HEIGHT];
+    landscape = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    portrait = new BufferedImage(HEIGHT, WIDTH, BufferedImage.TYPE_INT_RGB);
+    jpeg = encode(nv21, landscape);
+  }
+
+  @Benchmark
+  public byte[] before() throws IOException {
+    return encode(Nv21RotationTest.rotateNV21(nv21, WIDTH, HEIGHT, ROTATION), portrait);
+  }
+
+  @Benchmark
+  public byte[] after() throws IOException {
+    return ExifOrientation.stamp(encode(nv21, landscape), ROTATION);
+  }
+
+  @Benchmark
+  public byte[] rotateNV21() {
+    return Nv21RotationTest.rotateNV21(nv21, WIDTH, HEIGHT, ROTATION);
+  }
+
+  @Benchmark
+  public byte[] tiledRotation() {
+    Nv21Rotation.rotate(nv21, WIDTH, HEIGHT, ROTATION, rotated);
+    return rotated;
+  }
+
+  @Benchmark
+  public byte[] stamp() {
+    return ExifOrientation.stamp(jpeg, ROTATION);
+  }
+
+  private byte[] encode(final byte[] frame, final BufferedImage image) throws IOException {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+    ImageUtils.convertYUV420SPToARGB8888(frame, width, height, argb);
+    image.setRGB(0, 0, width, height, argb, 0, width);
+    out.reset();
+    ImageIO.write(image, "jpg", out);
+    return out.toByteArray();
+  }
+}
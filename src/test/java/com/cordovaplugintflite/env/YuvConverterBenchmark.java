@@ -0,0 +1,62 @@
+package com.cordovaplugintflite.env;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NV21 to ARGB conversion of one preview frame: the striped {@link YuvConverter} against the
+ * single-threaded {@link ImageUtils} conversion. The stripe count follows the cores of the
+ * machine, so on one core both run the same loop.
+ *
+ * <pre>mvn -B -Pbenchmark test-compile exec:exec -Djmh.args=YuvConverterBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YuvConverterBenchmark {
+
+  @Param({"640x480", "1280x960", "1920x1080"})
+  public String size;
+
+  private int width;
+  private int height;
+  private byte[] nv21;
+  private int[] argb;
+
+  @Setup
+  public void setUp() {
+    final String[] dims = size.split("x");
+    width = Integer.parseInt(dims[0]);
+    height = Integer.parseInt(dims[1]);
+    nv21 = new byte[width * height * 3 / 2];
+    new Random(1).nextBytes(nv21);
+    argb = new int[width * height];
+  }
+
+  @Benchmark
+  public int[] striped() {
+    YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, argb);
+    return argb;
+  }
+
+  @Benchmark
+  public int[] singleThreaded() {
+    ImageUtils.convertYUV420SPToARGB8888(nv21, width, height, argb);
+    return argb;
+  }
+}
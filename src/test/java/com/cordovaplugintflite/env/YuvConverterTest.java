@@ -0,0 +1,117 @@
+package com.cordovaplugintflite.env;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks that the striped conversions are bit-exact with the single-threaded ones in
+ * {@link ImageUtils}, on random frames tall enough to be split into stripes.
+ */
+public class YuvConverterTest {
+
+  private static final int[][] SIZES = {{640, 480}, {1280, 720}, {33, 97}, {2, 2}};
+
+  private static int defaultMaxStripes;
+
+  private final Random random = new Random(42);
+
+  @BeforeClass
+  public static void splitIntoStripes() {
+    defaultMaxStripes = YuvConverter.maxStripes;
+    YuvConverter.maxStripes = 4;
+  }
+
+  @AfterClass
+  public static void restoreStripes() {
+    YuvConverter.maxStripes = defaultMaxStripes;
+  }
+
+  @Test
+  public void nv21MatchesImageUtils() {
+    for (final int[] size : SIZES) {
+      final int width = size[0];
+      final int height = size[1];
+      final byte[] nv21 = randomBytes(width * height + ((width + 1) / 2) * ((height + 1) / 2) * 2);
+
+      final int[] expected = new int[width * height];
+      ImageUtils.convertYUV420SPToARGB8888(nv21, width, height, expected);
+      final int[] actual = new int[width * height];
+      YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, actual);
+      assertArrayEquals(width + "x" + height, expected, actual);
+
+      final int[] viaFrame = new int[width * height];
+      YuvConverter.convert(YuvFrame.ofNv21(nv21, width, height), viaFrame);
+      assertArrayEquals(width + "x" + height, expected, viaFrame);
+    }
+  }
+
+  @Test
+  public void planesMatchImageUtils() {
+    for (final int[] size : SIZES) {
+      for (final int uvPixelStride : new int[]{1, 2}) {
+        final int width = size[0];
+        final int height = size[1];
+        // Rows padded as Camera2 does, so strides differ from the width.
+        final int yRowStride = width + 16;
+        final int uvRowStride = ((width + 1) / 2) * uvPixelStride + 8;
+        final int uvRows = (height + 1) / 2;
+        final byte[] y = randomBytes(yRowStride * height);
+        final byte[] u = randomBytes(uvRowStride * uvRows);
+        final byte[] v = randomBytes(uvRowStride * uvRows);
+        final String message = width + "x" + height + ", pixel stride " + uvPixelStride;
+
+        final int[] expected = new int[width * height];
+        ImageUtils.convertYUV420ToARGB8888(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride,
+          expected);
+        final int[] actual = new int[width * height];
+        YuvConverter.convertYUV420ToARGB8888(y, u, v, width, height, yRowStride, uvRowStride, uvPixelStride,
+          actual);
+        assertArrayEquals(message, expected, actual);
+
+        final int[] viaFrame = new int[width * height];
+        YuvConverter.convert(YuvFrame.ofPlanes(width, height,
+          ByteBuffer.wrap(y), ByteBuffer.wrap(u), ByteBuffer.wrap(v), yRowStride, uvRowStride, uvPixelStride),
+          viaFrame);
+        assertArrayEquals(message, expected, viaFrame);
+      }
+    }
+  }
+
+  @Test
+  public void extremeValuesMatchImageUtils() {
+    // Every Y, U and V combination at the clamping edges.
+    final int[] values = {0, 1, 15, 16, 17, 127, 128, 129, 235, 240, 254, 255};
+    final int width = values.length * 2;
+    final int height = values.length * values.length * 2;
+    final byte[] nv21 = new byte[width * height * 3 / 2];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        nv21[row * width + col] = (byte) values[col / 2];
+      }
+    }
+    for (int row = 0; row < height / 2; row++) {
+      for (int col = 0; col < width; col += 2) {
+        nv21[width * height + row * width + col] = (byte) values[row % values.length];
+        nv21[width * height + row * width + col + 1] = (byte) values[row / values.length];
+      }
+    }
+
+    final int[] expected = new int[width * height];
+    ImageUtils.convertYUV420SPToARGB8888(nv21, width, height, expected);
+    final int[] actual = new int[width * height];
+    YuvConverter.convertYUV420SPToARGB8888(nv21, width, height, actual);
+    assertArrayEquals(expected, actual);
+  }
+
+  private byte[] randomBytes(final int length) {
+    final byte[] bytes = new byte[length];
+    random.nextBytes(bytes);
+    return bytes;
+  }
+}
@@ -0,0 +1,195 @@
+package com.cordovaplugintflite.tflite;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+
+import com.cordovaplugintflite.tflite.DelegateSelector.Backend;
+import com.cordovaplugintflite.tflite.DelegateSelector.Choice;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Opens {@link CompilationCache} entries across simulated app updates, against a temporary cache
+ * directory and in-memory preferences.
+ */
+public class CompilationCacheTest {
+
+  private static final String MODEL = "yolov4-tiny.tflite";
+  private static final Choice GPU = new Choice(Backend.GPU, 4);
+  private static final Choice NNAPI = new Choice(Backend.NNAPI, 4);
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, byte[]> assets = new HashMap<>();
+  private final Map<String, Object> prefs = new HashMap<>();
+  private long lastUpdateTime = 1;
+  private File cacheDir;
+  private Context context;
+
+  @Before
+  public void setUp() throws IOException {
+    cacheDir = folder.newFolder("cache");
+    context = new TestContext();
+  }
+
+  @Test
+  public void cachesOnlyCompilingDelegates() {
+    assets.put(MODEL, bytes("v1"));
+
+    assertNull(CompilationCache.open(context, MODEL, new Choice(Backend.CPU, 4)));
+    assertNull(CompilationCache.open(context, MODEL, new Choice(Backend.XNNPACK, 4)));
+  }
+
+  @Test
+  public void updatedModelRemovesStaleEntries() throws IOException {
+    assets.put(MODEL, bytes("v1"));
+    final CompilationCache gpu1 = CompilationCache.open(context, MODEL, GPU);
+    final CompilationCache nnapi1 = CompilationCache.open(context, MODEL, NNAPI);
+    assertTrue(new File(gpu1.getDir(), "program.bin").createNewFile());
+    assertTrue(new File(nnapi1.getDir(), "program.bin").createNewFile());
+
+    assets.put(MODEL, bytes("v2"));
+    lastUpdateTime = 2;
+    final CompilationCache gpu2 = CompilationCache.open(context, MODEL, GPU);
+
+    assertNotEquals(gpu1.getModelToken(), gpu2.getModelToken());
+    assertFalse(gpu2.isHit());
+    assertFalse(gpu1.getDir().exists());
+    assertFalse(nnapi1.getDir().exists());
+    assertEquals(Collections.singleton(MODEL + "|2"), prefs.keySet());
+  }
+
+  @Test
+  public void unchangedModelKeepsProgramsAcrossUpdates() throws IOException {
+    assets.put(MODEL, bytes("v1"));
+    final CompilationCache before = CompilationCache.open(context, MODEL, GPU);
+    assertTrue(new File(before.getDir(), "program.bin").createNewFile());
+
+    lastUpdateTime = 2;
+    final CompilationCache after = CompilationCache.open(context, MODEL, GPU);
+
+    assertEquals(before.getModelToken(), after.getModelToken());
+    assertTrue(after.isHit());
+    assertEquals(Collections.singleton(MODEL + "|2"), prefs.keySet());
+  }
+
+  @Test
+  public void keepsProgramsOfAnotherModelWithTheSameHash() throws IOException {
+    assets.put(MODEL, bytes("v1"));
+    assets.put("copy.tflite", bytes("v1"));
+    final CompilationCache original = CompilationCache.open(context, MODEL, GPU);
+    CompilationCache.open(context, "copy.tflite", GPU);
+    assertTrue(new File(original.getDir(), "program.bin").createNewFile());
+
+    assets.put(MODEL, bytes("v2"));
+    lastUpdateTime = 2;
+    CompilationCache.open(context, MODEL, GPU);
+
+    assertTrue(new File(original.getDir(), "program.bin").exists());
+  }
+
+  private static byte[] bytes(final String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private final class TestContext extends Context {
+    @Override
+    public AssetManager getAssets() {
+      return new AssetManager() {
+        @Override
+        public InputStream open(final String fileName) throws IOException {
+          final byte[] content = assets.get(fileName);
+          if (content == null) {
+            throw new FileNotFoundException(fileName);
+          }
+          return new ByteArrayInputStream(content);
+        }
+      };
+    }
+
+    @Override
+    public SharedPreferences getSharedPreferences(final String name, final int mode) {
+      return new MapPreferences();
+    }
+
+    @Override
+    public File getCacheDir() {
+      return cacheDir;
+    }
+
+    @Override
+    public PackageManager getPackageManager() {
+      return new PackageManager() {
+        @Override
+        public PackageInfo getPackageInfo(final String packageName, final int flags) {
+          final PackageInfo info = new PackageInfo();
+          info.lastUpdateTime = lastUpdateTime;
+          return info;
+        }
+      };
+    }
+
+    @Override
+    public String getPackageName() {
+      return "com.example.app";
+    }
+  }
+
+  /** Preferences over {@link #prefs}; edits apply at once. */
+  private final class MapPreferences implements SharedPreferences {
+    @Override
+    public Map<String, ?> getAll() {
+      return new HashMap<>(prefs);
+    }
+
+    @Override
+    public String getString(final String key, final String defValue) {
+      final Object value = prefs.get(key);
+      return value == null ? defValue : (String) value;
+    }
+
+    @Override
+    public Editor edit() {
+      return new Editor() {
+        @Override
+        public Editor putString(final String key, final String value) {
+          prefs.put(key, value);
+          return this;
+        }
+
+        @Override
+        public Editor remove(final String key) {
+          prefs.remove(key);
+          return this;
+        }
+
+        @Override
+        public void apply() {
+        }
+      };
+    }
+  }
+}
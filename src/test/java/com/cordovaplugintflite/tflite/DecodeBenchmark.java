@@ -0,0 +1,89 @@
+package com.cordovaplugintflite.tflite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode of one yolov4-tiny 416x416 frame (13x13 and 26x26 grids, 80 classes), with and without
+ * the objectness early reject. Most cells are background, as in a real frame.
+ * <p>
+ * {@code probability} class scores declare {@code classScoreMax = 1}, so the early reject applies;
+ * {@code logit} class scores are unbounded and every cell is scanned either way. With
+ * {@code useFastMath} the boxes are decoded with {@link com.cordovaplugintflite.env.FastMath}.
+ *
+ * <pre>mvn -B -Pbenchmark test-compile exec:exec -Djmh.args=DecodeBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+  private static final int INPUT_SIZE = 416;
+  private static final int CLASSES = 80;
+  private static final int CHANNELS = 5 + CLASSES;
+  // Share of cells with a plausible objectness.
+  private static final float FOREGROUND = 0.02f;
+
+  @Param({"true", "false"})
+  public boolean objectnessFirst;
+
+  @Param({"probability", "logit"})
+  public String classScores;
+
+  @Param({"false", "true"})
+  public boolean useFastMath;
+
+  private YoloV4Classifier classifier;
+  private Classifier.Outputs outputs;
+
+  @Setup
+  public void setUp() {
+    final ScriptedInterpreter interpreter =
+      new ScriptedInterpreter(INPUT_SIZE, new int[]{13, 26}, CHANNELS);
+    final boolean probability = "probability".equals(classScores);
+    final Random random = new Random(1);
+    for (float[] output : interpreter.outputs) {
+      for (int cell = 0; cell < output.length; cell += CHANNELS) {
+        for (int c = 0; c < 4; c++) {
+          output[cell + c] = random.nextFloat() - 0.5f;
+        }
+        output[cell + 4] = random.nextFloat() < FOREGROUND
+          ? random.nextFloat() * 8 - 2 : -6 - random.nextFloat() * 6;
+        for (int c = 5; c < CHANNELS; c++) {
+          output[cell + c] = probability ? random.nextFloat() * random.nextFloat() : random.nextFloat() * 12 - 8;
+        }
+      }
+    }
+    final List<String> labels = new ArrayList<String>();
+    for (int c = 0; c < CLASSES; c++) {
+      labels.add("class" + c);
+    }
+    classifier = YoloV4Classifier.create(interpreter, labels,
+      probability ? 1 : Float.POSITIVE_INFINITY);
+    classifier.setObjectnessFirst(objectnessFirst);
+    outputs = classifier.newOutputs(null, useFastMath);
+    classifier.invoke(classifier.newInputs(), outputs);
+  }
+
+  @Benchmark
+  public List<Classifier.Recognition> decode() {
+    return classifier.decode(outputs);
+  }
+}
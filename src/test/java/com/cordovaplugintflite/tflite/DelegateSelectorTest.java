@@ -0,0 +1,178 @@
+package com.cordovaplugintflite.tflite;
+
+import com.cordovaplugintflite.tflite.DelegateSelector.Backend;
+import com.cordovaplugintflite.tflite.DelegateSelector.Choice;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs {@link DelegateSelector#select} against a runner with scripted timings and failures.
+ */
+public class DelegateSelectorTest {
+
+  private static final Choice CPU_2 = new Choice(Backend.CPU, 2);
+  private static final Choice XNNPACK_4 = new Choice(Backend.XNNPACK, 4);
+  private static final Choice GPU_4 = new Choice(Backend.GPU, 4);
+  private static final Choice NNAPI_4 = new Choice(Backend.NNAPI, 4);
+
+  /**
+   * Returns the scripted time of each choice, and fails for choices without one.
+   */
+  private static final class ScriptedRunner implements DelegateSelector.Runner {
+    final Map<Choice, Float> timings = new HashMap<>();
+    final List<Float> bestMsSeen = new ArrayList<>();
+
+    ScriptedRunner takes(final Choice choice, final float ms) {
+      timings.put(choice, ms);
+      return this;
+    }
+
+    @Override
+    public float time(final Choice choice, final float bestMs) throws Exception {
+      bestMsSeen.add(bestMs);
+      final Float ms = timings.get(choice);
+      if (ms == null) {
+        throw new UnsupportedOperationException(choice + " is not available");
+      }
+      return ms;
+    }
+  }
+
+  /**
+   * Interpreter whose runs take the scripted times, the last one repeating.
+   */
+  private static final class SleepingInterpreter extends Interpreter {
+    private final Tensor tensor = new ScriptedInterpreter.FakeTensor(DataType.FLOAT32, new int[]{1, 4}, 1, 0);
+    private final long[] runMs;
+    int runs;
+
+    SleepingInterpreter(final long... runMs) {
+      this.runMs = runMs;
+    }
+
+    @Override
+    public Tensor getInputTensor(final int index) {
+      return tensor;
+    }
+
+    @Override
+    public int getOutputTensorCount() {
+      return 1;
+    }
+
+    @Override
+    public Tensor getOutputTensor(final int index) {
+      return tensor;
+    }
+
+    @Override
+    public void runForMultipleInputsOutputs(final Object[] inputs, final Map<Integer, Object> outputs) {
+      try {
+        Thread.sleep(runMs[Math.min(runs++, runMs.length - 1)]);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static DelegateSelector.InterpreterRunner runnerOf(final Interpreter interpreter) {
+    return new DelegateSelector.InterpreterRunner(null) {
+      @Override
+      Interpreter newInterpreter(final Interpreter.Options options) {
+        return interpreter;
+      }
+    };
+  }
+
+  @Test
+  public void slowFirstRunIsNotCutOff() throws Exception {
+    // The first run compiles the GPU program; the later ones are fast.
+    final SleepingInterpreter interpreter = new SleepingInterpreter(300, 5);
+
+    final float ms = runnerOf(interpreter).time(GPU_4, 40f);
+
+    assertTrue("timed " + ms + " ms", ms < 40f);
+    assertEquals(3, interpreter.runs);
+  }
+
+  @Test
+  public void slowTimedRunIsCutOff() throws Exception {
+    final SleepingInterpreter interpreter = new SleepingInterpreter(150);
+
+    assertEquals(Float.POSITIVE_INFINITY, runnerOf(interpreter).time(CPU_2, 40f), 0f);
+    // The warm-up run and the first timed run.
+    assertEquals(2, interpreter.runs);
+  }
+
+  @Test
+  public void picksFastestCandidate() {
+    final ScriptedRunner runner = new ScriptedRunner()
+      .takes(CPU_2, 80f).takes(XNNPACK_4, 35f).takes(GPU_4, 50f).takes(NNAPI_4, 120f);
+
+    assertEquals(XNNPACK_4, DelegateSelector.select(Arrays.asList(CPU_2, XNNPACK_4, GPU_4, NNAPI_4), runner));
+  }
+
+  @Test
+  public void passesBestTimeSoFarToRunner() {
+    final ScriptedRunner runner = new ScriptedRunner()
+      .takes(CPU_2, 80f).takes(XNNPACK_4, 35f).takes(NNAPI_4, 120f);
+
+    DelegateSelector.select(Arrays.asList(CPU_2, XNNPACK_4, GPU_4, NNAPI_4), runner);
+
+    assertEquals(Arrays.asList(Float.POSITIVE_INFINITY, 80f, 35f, 35f), runner.bestMsSeen);
+  }
+
+  @Test
+  public void skipsFailingCandidates() {
+    final ScriptedRunner runner = new ScriptedRunner().takes(NNAPI_4, 120f);
+
+    assertEquals(NNAPI_4, DelegateSelector.select(Arrays.asList(CPU_2, XNNPACK_4, GPU_4, NNAPI_4), runner));
+  }
+
+  @Test
+  public void keepsEarlierCandidateOnTie() {
+    final ScriptedRunner runner = new ScriptedRunner().takes(CPU_2, 40f).takes(XNNPACK_4, 40f);
+
+    assertEquals(CPU_2, DelegateSelector.select(Arrays.asList(CPU_2, XNNPACK_4), runner));
+  }
+
+  @Test
+  public void ignoresCandidatesGivenUpOn() {
+    final ScriptedRunner runner = new ScriptedRunner()
+      .takes(CPU_2, 40f).takes(GPU_4, Float.POSITIVE_INFINITY);
+
+    assertEquals(CPU_2, DelegateSelector.select(Arrays.asList(CPU_2, GPU_4), runner));
+  }
+
+  @Test
+  public void fallsBackToDefaultWhenAllFail() {
+    final ScriptedRunner runner = new ScriptedRunner();
+
+    assertEquals(DelegateSelector.DEFAULT, DelegateSelector.select(Arrays.asList(CPU_2, GPU_4), runner));
+    assertEquals(DelegateSelector.DEFAULT,
+      DelegateSelector.select(Collections.<Choice>emptyList(), runner));
+  }
+
+  @Test
+  public void parsesStoredChoice() {
+    assertEquals(GPU_4, Choice.parse(GPU_4.toString()));
+    assertNull(Choice.parse(null));
+    assertNull(Choice.parse("GPU"));
+    assertNull(Choice.parse("TPU:4"));
+    assertNull(Choice.parse("CPU:x"));
+  }
+}
@@ -0,0 +1,55 @@
+package com.cordovaplugintflite.tflite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NonMaxSuppression} against the per-class PriorityQueue implementation it replaced, on
+ * the random boxes of {@link NonMaxSuppressionTest}. Both produce the kept ids as strings, as
+ * the original built one Recognition per kept box.
+ *
+ * <pre>mvn -B -Pbenchmark test-compile exec:exec -Djmh.args=NonMaxSuppressionBenchmark</pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NonMaxSuppressionBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int candidates;
+
+  private List<NonMaxSuppressionTest.Box> boxes;
+  private NonMaxSuppression nms;
+
+  @Setup
+  public void setUp() {
+    boxes = NonMaxSuppressionTest.randomBoxes(new Random(1), candidates, 0);
+    nms = new NonMaxSuppression(NonMaxSuppressionTest.IOU_THRESHOLD);
+  }
+
+  @Benchmark
+  public List<String> flat() {
+    return NonMaxSuppressionTest.run(nms, boxes);
+  }
+
+  @Benchmark
+  public List<String> priorityQueue() {
+    return NonMaxSuppressionTest.original(boxes);
+  }
+}
@@ -0,0 +1,173 @@
+package com.cordovaplugintflite.tflite;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Golden parity of {@link NonMaxSuppression} with the per-class PriorityQueue implementation it
+ * replaced, including degenerate boxes.
+ */
+public class NonMaxSuppressionTest {
+
+  static final float IOU_THRESHOLD = 0.01f;
+  private static final int CLASSES = 5;
+
+  static final class Box {
+    final int id;
+    final int detectedClass;
+    final float score;
+    final float left, top, right, bottom;
+
+    Box(final int id, final int detectedClass, final float score,
+        final float left, final float top, final float right, final float bottom) {
+      this.id = id;
+      this.detectedClass = detectedClass;
+      this.score = score;
+      this.left = left;
+      this.top = top;
+      this.right = right;
+      this.bottom = bottom;
+    }
+  }
+
+  @Test
+  public void matchesOriginalOnRandomFrames() {
+    final Random random = new Random(42);
+    final NonMaxSuppression nms = new NonMaxSuppression(IOU_THRESHOLD);
+    for (int frame = 0; frame < 500; frame++) {
+      final List<Box> boxes = randomBoxes(random, 1 + random.nextInt(200), 0.2f);
+      assertEquals("frame " + frame, original(boxes), run(nms, boxes));
+    }
+  }
+
+  @Test
+  public void suppressesZeroAreaBoxesLikeOriginal() {
+    final List<Box> boxes = Arrays.asList(
+      new Box(0, 1, 0.9f, 10, 10, 10, 10),
+      new Box(1, 1, 0.8f, 10, 10, 10, 10),
+      new Box(2, 1, 0.7f, 20, 20, 20, 40),
+      new Box(3, 1, 0.6f, 5, 5, 50, 50),
+      new Box(4, 2, 0.5f, 0, 0, 0, 0));
+    final List<String> kept = run(new NonMaxSuppression(IOU_THRESHOLD), boxes);
+    assertEquals(original(boxes), kept);
+    // Boxes 1 and 2 have a NaN IoU with box 0, 0 / 0, and are suppressed; box 3 has an IoU of 0.
+    assertEquals(Arrays.asList("1:0", "1:3", "2:4"), kept);
+  }
+
+  @Test
+  public void reusesBuffersAcrossFramesOfDifferentSizes() {
+    final Random random = new Random(7);
+    final NonMaxSuppression nms = new NonMaxSuppression(IOU_THRESHOLD);
+    for (final int count : new int[]{1000, 3, 250, 0, 1}) {
+      final List<Box> boxes = randomBoxes(random, count, 0);
+      assertEquals(original(boxes), run(nms, boxes));
+    }
+  }
+
+  static List<Box> randomBoxes(final Random random, final int count, final float degenerate) {
+    final List<Box> boxes = new ArrayList<>();
+    // Distinct scores: the original broke ties in heap order.
+    final float[] scores = new float[count];
+    for (int i = 0; i < count; i++) {
+      scores[i] = (i + 1) / (float) (count + 1);
+    }
+    for (int i = count - 1; i > 0; i--) {
+      final int j = random.nextInt(i + 1);
+      final float t = scores[i];
+      scores[i] = scores[j];
+      scores[j] = t;
+    }
+    for (int i = 0; i < count; i++) {
+      final float left = random.nextFloat() * 400;
+      final float top = random.nextFloat() * 400;
+      float width = 1 + random.nextFloat() * 120;
+      float height = 1 + random.nextFloat() * 120;
+      if (random.nextFloat() < degenerate) {
+        width = 0;
+        if (random.nextBoolean()) {
+          height = 0;
+        }
+      }
+      boxes.add(new Box(i, random.nextInt(CLASSES), scores[i], left, top, left + width, top + height));
+    }
+    return boxes;
+  }
+
+  static List<String> run(final NonMaxSuppression nms, final List<Box> boxes) {
+    nms.clear();
+    for (Box b : boxes) {
+      nms.add(b.id, b.detectedClass, b.score, b.left, b.top, b.right, b.bottom);
+    }
+    final int kept = nms.run();
+    final List<String> result = new ArrayList<>();
+    for (int n = 0; n < kept; n++) {
+      final int k = nms.kept(n);
+      result.add(nms.getDetectedClass(k) + ":" + nms.getId(k));
+    }
+    return result;
+  }
+
+  /** The replaced YoloV4Classifier.nms, on plain boxes. */
+  static List<String> original(final List<Box> list) {
+    final List<String> nmsList = new ArrayList<>();
+    for (int k = 0; k < CLASSES; k++) {
+      final PriorityQueue<Box> pq = new PriorityQueue<>(50, new Comparator<Box>() {
+        @Override
+        public int compare(final Box lhs, final Box rhs) {
+          return Float.compare(rhs.score, lhs.score);
+        }
+      });
+      for (Box box : list) {
+        if (box.detectedClass == k) {
+          pq.add(box);
+        }
+      }
+      while (pq.size() > 0) {
+        final Box[] detections = pq.toArray(new Box[pq.size()]);
+        final Box max = detections[0];
+        nmsList.add(max.detectedClass + ":" + max.id);
+        pq.clear();
+        for (int j = 1; j < detections.length; j++) {
+          if (boxIou(max, detections[j]) < IOU_THRESHOLD) {
+            pq.add(detections[j]);
+          }
+        }
+      }
+    }
+    return nmsList;
+  }
+
+  private static float boxIou(final Box a, final Box b) {
+    return boxIntersection(a, b) / boxUnion(a, b);
+  }
+
+  private static float boxIntersection(final Box a, final Box b) {
+    final float w = overlap((a.left + a.right) / 2, a.right - a.left, (b.left + b.right) / 2, b.right - b.left);
+    final float h = overlap((a.top + a.bottom) / 2, a.bottom - a.top, (b.top + b.bottom) / 2, b.bottom - b.top);
+    if (w < 0 || h < 0) return 0;
+    return w * h;
+  }
+
+  private static float boxUnion(final Box a, final Box b) {
+    final float i = boxIntersection(a, b);
+    return (a.right - a.left) * (a.bottom - a.top) + (b.right - b.left) * (b.bottom - b.top) - i;
+  }
+
+  private static float overlap(final float x1, final float w1, final float x2, final float w2) {
+    final float l1 = x1 - w1 / 2;
+    final float l2 = x2 - w2 / 2;
+    final float left = l1 > l2 ? l1 : l2;
+    final float r1 = x1 + w1 / 2;
+    final float r2 = x2 + w2 / 2;
+    final float right = r1 < r2 ? r1 : r2;
+    return right - left;
+  }
+}
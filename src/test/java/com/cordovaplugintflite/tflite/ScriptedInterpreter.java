@@ -0,0 +1,111 @@
+package com.cordovaplugintflite.tflite;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Interpreter that writes scripted YOLO outputs instead of running a model. Each run copies the
+ * values of {@link #outputs} into the bound output buffers, without allocating.
+ */
+final class ScriptedInterpreter extends Interpreter {
+
+  static final class FakeTensor implements Tensor {
+    private final DataType type;
+    private final int[] shape;
+    private final QuantizationParams params;
+
+    FakeTensor(final DataType type, final int[] shape, final float scale, final int zeroPoint) {
+      this.type = type;
+      this.shape = shape;
+      this.params = new QuantizationParams(scale, zeroPoint);
+    }
+
+    @Override
+    public DataType dataType() {
+      return type;
+    }
+
+    @Override
+    public int[] shape() {
+      return shape.clone();
+    }
+
+    @Override
+    public int numBytes() {
+      int count = 1;
+      for (int dim : shape) count *= dim;
+      return count * (type == DataType.FLOAT32 ? 4 : 1);
+    }
+
+    @Override
+    public QuantizationParams quantizationParams() {
+      return params;
+    }
+  }
+
+  private final FakeTensor input;
+  private final FakeTensor[] outputTensors;
+  // Raw values written to each output on every run: floats, or quantized values for uint8.
+  final float[][] outputs;
+  int runs;
+
+  /**
+   * @param inputSize Width and height of the float input.
+   * @param grids     Grid size of each output, [1, grid, grid, 3, channels].
+   * @param channels  5 + number of classes.
+   */
+  ScriptedInterpreter(final int inputSize, final int[] grids, final int channels) {
+    this(inputSize, grids, channels, DataType.FLOAT32, 1, 0);
+  }
+
+  ScriptedInterpreter(final int inputSize, final int[] grids, final int channels,
+                      final DataType outputType, final float scale, final int zeroPoint) {
+    input = new FakeTensor(DataType.FLOAT32, new int[]{1, inputSize, inputSize, 3}, 1, 0);
+    outputTensors = new FakeTensor[grids.length];
+    outputs = new float[grids.length][];
+    for (int i = 0; i < grids.length; i++) {
+      outputTensors[i] = new FakeTensor(outputType, new int[]{1, grids[i], grids[i], 3, channels}, scale, zeroPoint);
+      outputs[i] = new float[grids[i] * grids[i] * 3 * channels];
+    }
+  }
+
+  @Override
+  public Tensor getInputTensor(final int index) {
+    return input;
+  }
+
+  @Override
+  public int getOutputTensorCount() {
+    return outputTensors.length;
+  }
+
+  @Override
+  public Tensor getOutputTensor(final int index) {
+    return outputTensors[index];
+  }
+
+  @Override
+  public void runForMultipleInputsOutputs(final Object[] inputs, final Map<Integer, Object> outputMap) {
+    runs++;
+    for (int i = 0; i < outputs.length; i++) {
+      final ByteBuffer buffer = (ByteBuffer) outputMap.get(i);
+      if (buffer == null) {
+        continue;
+      }
+      final float[] values = outputs[i];
+      if (outputTensors[i].dataType() == DataType.FLOAT32) {
+        for (int k = 0; k < values.length; k++) {
+          buffer.putFloat(4 * k, values[k]);
+        }
+      } else {
+        for (int k = 0; k < values.length; k++) {
+          buffer.put(k, (byte) values[k]);
+        }
+      }
+    }
+  }
+}
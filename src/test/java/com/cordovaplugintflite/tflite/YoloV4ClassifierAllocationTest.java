@@ -0,0 +1,101 @@
+package com.cordovaplugintflite.tflite;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import com.cordovaplugintflite.env.YuvFrame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that recognition does not allocate per frame once warmed up: the input buffers, the
+ * interpreter arguments and the output buffers are all reused. Only the returned list is new.
+ */
+public class YoloV4ClassifierAllocationTest {
+
+  private static final int INPUT_SIZE = 64;
+  private static final int CHANNELS = 5 + 4;
+  private static final int WARMUP_CALLS = 2000;
+  private static final int CALLS = 1000;
+  // An empty ArrayList, with room for the object header and alignment.
+  private static final long RESULT_BYTES = 32;
+
+  private final com.sun.management.ThreadMXBean threads =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private ScriptedInterpreter interpreter;
+  private YoloV4Classifier classifier;
+
+  @Before
+  public void setUp() {
+    interpreter = new ScriptedInterpreter(INPUT_SIZE, new int[]{4, 2}, CHANNELS);
+    // No cell clears the objectness threshold, so there is nothing to report.
+    for (float[] output : interpreter.outputs) {
+      Arrays.fill(output, -10f);
+    }
+    classifier = YoloV4Classifier.create(interpreter, Arrays.asList("a", "b", "c", "d"));
+  }
+
+  @Test
+  public void recognizeImageDoesNotAllocate() {
+    final Bitmap bitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
+    final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    final Random random = new Random(1);
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt();
+    }
+    bitmap.setPixels(pixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
+
+    for (int i = 0; i < WARMUP_CALLS; i++) {
+      classifier.recognizeImage(bitmap);
+    }
+    final long before = allocatedBytes();
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(0, classifier.recognizeImage(bitmap).size());
+    }
+    final long perCall = (allocatedBytes() - before) / CALLS;
+
+    assertEquals(WARMUP_CALLS + CALLS, interpreter.runs);
+    assertTrue("allocated " + perCall + " bytes per call", perCall <= RESULT_BYTES);
+  }
+
+  @Test
+  public void recognizeYuvDoesNotAllocate() {
+    final int width = 160;
+    final int height = 120;
+    final byte[] nv21 = new byte[width * height * 3 / 2];
+    new Random(2).nextBytes(nv21);
+    final YuvFrame frame = YuvFrame.ofNv21(nv21, width, height);
+    final Rect roi = new Rect(20, 10, 140, 110);
+
+    for (int i = 0; i < WARMUP_CALLS; i++) {
+      classifier.recognizeYuv(frame, roi, 90);
+    }
+    final long before = allocatedBytes();
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(0, classifier.recognizeYuv(frame, roi, 90).size());
+    }
+    final long perCall = (allocatedBytes() - before) / CALLS;
+
+    assertTrue("allocated " + perCall + " bytes per call", perCall <= RESULT_BYTES);
+  }
+
+  @Test
+  public void convertBitmapToByteBufferReusesInputBuffer() {
+    final Bitmap bitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
+
+    assertTrue(classifier.convertBitmapToByteBuffer(bitmap) == classifier.convertBitmapToByteBuffer(bitmap));
+  }
+
+  private long allocatedBytes() {
+    return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
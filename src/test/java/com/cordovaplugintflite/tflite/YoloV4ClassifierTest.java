@@ -0,0 +1,183 @@
+package com.cordovaplugintflite.tflite;
+
+import com.cordovaplugintflite.tflite.Classifier.Recognition;
+
+import org.junit.Test;
+import org.tensorflow.lite.DataType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/** Decodes scripted output tensors and checks what the classifier reports. */
+public class YoloV4ClassifierTest {
+
+  private static final int INPUT_SIZE = 64;
+  private static final List<String> LABELS = Arrays.asList("a", "b", "c", "d");
+  private static final int CHANNELS = 5 + 4;
+
+  /** Fills every output with values that detect nothing. */
+  private static ScriptedInterpreter emptyInterpreter(final int[] grids) {
+    final ScriptedInterpreter interpreter = new ScriptedInterpreter(INPUT_SIZE, grids, CHANNELS);
+    for (float[] output : interpreter.outputs) {
+      Arrays.fill(output, -10f);
+    }
+    return interpreter;
+  }
+
+  /** Writes a centered box with the given objectness and class scores into one anchor cell. */
+  private static void setCell(final ScriptedInterpreter interpreter, final int output, final int cell,
+                              final float objectness, final float... classScores) {
+    final float[] values = interpreter.outputs[output];
+    final int offset = cell * CHANNELS;
+    values[offset] = 0;
+    values[offset + 1] = 0;
+    values[offset + 2] = 0;
+    values[offset + 3] = 0;
+    values[offset + 4] = objectness;
+    System.arraycopy(classScores, 0, values, offset + 5, classScores.length);
+  }
+
+  @Test
+  public void decodesOnlyTheFirstTwoOutputs() {
+    final ScriptedInterpreter interpreter = emptyInterpreter(new int[]{4, 2, 1});
+    setCell(interpreter, 2, 0, 10, 0, 0, 1, 0);
+    final YoloV4Classifier classifier = YoloV4Classifier.create(interpreter, LABELS);
+
+    assertEquals(0, classifier.recognizeImage(blankBitmap()).size());
+
+    setCell(interpreter, 1, 0, 10, 0, 0, 1, 0);
+    final List<Recognition> results = classifier.recognizeImage(blankBitmap());
+
+    assertEquals(1, results.size());
+    assertEquals("c", results.get(0).getTitle());
+  }
+
+  @Test
+  public void inactiveBestClassDropsTheCell() {
+    final ScriptedInterpreter interpreter = emptyInterpreter(new int[]{4, 2});
+    setCell(interpreter, 0, 0, 10, 0, 0.9f, 0.6f, 0);
+    final YoloV4Classifier classifier = YoloV4Classifier.create(interpreter, LABELS);
+
+    assertEquals(Collections.singletonList("b"), titles(classifier, classifier.newOutputs()));
+    assertEquals(Collections.singletonList("b"),
+      titles(classifier, classifier.newOutputs(Collections.singletonList("b"), false)));
+    // "c" clears the threshold too, but the cell is a "b".
+    assertEquals(Collections.<String>emptyList(),
+      titles(classifier, classifier.newOutputs(Collections.singletonList("c"), false)));
+  }
+
+  @Test
+  public void unknownActiveClassesReportEveryClass() {
+    final ScriptedInterpreter interpreter = emptyInterpreter(new int[]{4, 2});
+    setCell(interpreter, 0, 0, 10, 0, 0.9f, 0, 0);
+    final YoloV4Classifier classifier = YoloV4Classifier.create(interpreter, LABELS);
+
+    assertEquals(Collections.singletonList("b"),
+      titles(classifier, classifier.newOutputs(Collections.singletonList("unknown"), false)));
+  }
+
+  @Test
+  public void outputsKeepTheirOwnSettings() {
+    final ScriptedInterpreter interpreter = emptyInterpreter(new int[]{4, 2});
+    setCell(interpreter, 0, 0, 10, 0.9f, 0, 0, 0);
+    final YoloV4Classifier classifier = YoloV4Classifier.create(interpreter, LABELS);
+    final Classifier.Outputs onlyA = classifier.newOutputs(Collections.singletonList("a"), true);
+    final Classifier.Outputs onlyD = classifier.newOutputs(Collections.singletonList("d"), false);
+
+    assertEquals(Collections.singletonList("a"), titles(classifier, onlyA));
+    assertEquals(Collections.<String>emptyList(), titles(classifier, onlyD));
+    assertEquals(Collections.singletonList("a"), titles(classifier, onlyA));
+  }
+
+  @Test
+  public void objectnessFirstMatchesFullScanOnRawClassScores() {
+    // Unbounded class logits: a cell with low objectness can still clear the threshold.
+    final ScriptedInterpreter interpreter = new ScriptedInterpreter(INPUT_SIZE, new int[]{4, 2}, CHANNELS);
+    fillRandom(interpreter, new Random(3), -6, 6, -8, 8);
+
+    assertSameDecode(interpreter, Float.POSITIVE_INFINITY);
+  }
+
+  @Test
+  public void objectnessFirstMatchesFullScanOnProbabilities() {
+    final ScriptedInterpreter interpreter = new ScriptedInterpreter(INPUT_SIZE, new int[]{4, 2}, CHANNELS);
+    fillRandom(interpreter, new Random(4), -4, 4, 0, 1);
+
+    assertSameDecode(interpreter, 1);
+  }
+
+  @Test
+  public void objectnessFirstMatchesFullScanOnQuantizedOutputs() {
+    final ScriptedInterpreter interpreter =
+      new ScriptedInterpreter(INPUT_SIZE, new int[]{4, 2}, CHANNELS, DataType.UINT8, 0.05f, 128);
+    fillRandom(interpreter, new Random(5), 0, 255, 0, 255);
+
+    assertSameDecode(interpreter, Float.POSITIVE_INFINITY);
+  }
+
+  /** Fills the objectness and class channels with uniform values, boxes with small offsets. */
+  private static void fillRandom(final ScriptedInterpreter interpreter, final Random random,
+                                 final float objMin, final float objMax,
+                                 final float classMin, final float classMax) {
+    for (float[] output : interpreter.outputs) {
+      for (int k = 0; k < output.length; k++) {
+        final int channel = k % CHANNELS;
+        if (channel < 4) {
+          output[k] = interpreter.getOutputTensor(0).dataType() == DataType.FLOAT32
+            ? random.nextFloat() - 0.5f : 118 + random.nextInt(20);
+        } else if (channel == 4) {
+          output[k] = uniform(random, objMin, objMax);
+        } else {
+          output[k] = uniform(random, classMin, classMax);
+        }
+        if (interpreter.getOutputTensor(0).dataType() != DataType.FLOAT32) {
+          output[k] = Math.round(output[k]);
+        }
+      }
+    }
+  }
+
+  private static float uniform(final Random random, final float min, final float max) {
+    return min + random.nextFloat() * (max - min);
+  }
+
+  /** Decodes the same tensors with and without the objectness early reject. */
+  private static void assertSameDecode(final ScriptedInterpreter interpreter, final float classScoreMax) {
+    final YoloV4Classifier classifier = YoloV4Classifier.create(interpreter, LABELS, classScoreMax);
+    classifier.setObjectnessFirst(false);
+    final List<Recognition> fullScan = classifier.recognizeImage(blankBitmap());
+    classifier.setObjectnessFirst(true);
+    final List<Recognition> objectnessFirst = classifier.recognizeImage(blankBitmap());
+
+    assertFalse(fullScan.isEmpty());
+    assertEquals(fullScan.size(), objectnessFirst.size());
+    for (int n = 0; n < fullScan.size(); n++) {
+      final Recognition expected = fullScan.get(n);
+      final Recognition actual = objectnessFirst.get(n);
+      assertEquals(expected.getId(), actual.getId());
+      assertEquals(expected.getTitle(), actual.getTitle());
+      assertEquals(expected.getConfidence(), actual.getConfidence());
+      assertEquals(expected.getLocation().toString(), actual.getLocation().toString());
+    }
+  }
+
+  /** Runs one staged inference into {@code outputs} and returns the reported titles. */
+  private static List<String> titles(final Classifier classifier, final Classifier.Outputs outputs) {
+    classifier.invoke(classifier.newInputs(), outputs);
+    final List<String> titles = new ArrayList<String>();
+    for (Recognition recognition : classifier.decode(outputs)) {
+      titles.add(recognition.getTitle());
+    }
+    return titles;
+  }
+
+  private static android.graphics.Bitmap blankBitmap() {
+    return android.graphics.Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, android.graphics.Bitmap.Config.ARGB_8888);
+  }
+}
@@ -0,0 +1,23 @@
+package android.content;
+
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for the Android context; only what the tested classes call.
+ */
+public abstract class Context {
+  public static final int MODE_PRIVATE = 0;
+
+  public abstract AssetManager getAssets();
+
+  public abstract SharedPreferences getSharedPreferences(String name, int mode);
+
+  public abstract File getCacheDir();
+
+  public abstract PackageManager getPackageManager();
+
+  public abstract String getPackageName();
+}
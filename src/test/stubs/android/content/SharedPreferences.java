@@ -0,0 +1,22 @@
+package android.content;
+
+import java.util.Map;
+
+/**
+ * JVM stand-in for Android shared preferences; only what the tested classes call.
+ */
+public interface SharedPreferences {
+  Map<String, ?> getAll();
+
+  String getString(String key, String defValue);
+
+  Editor edit();
+
+  interface Editor {
+    Editor putString(String key, String value);
+
+    Editor remove(String key);
+
+    void apply();
+  }
+}
@@ -0,0 +1,8 @@
+package android.content.pm;
+
+/**
+ * JVM stand-in for Android package info.
+ */
+public class PackageInfo {
+  public long lastUpdateTime;
+}
@@ -0,0 +1,15 @@
+package android.content.pm;
+
+/**
+ * JVM stand-in for the Android package manager; only what the tested classes call.
+ */
+public abstract class PackageManager {
+
+  public static class NameNotFoundException extends Exception {
+    public NameNotFoundException(final String name) {
+      super(name);
+    }
+  }
+
+  public abstract PackageInfo getPackageInfo(String packageName, int flags) throws NameNotFoundException;
+}
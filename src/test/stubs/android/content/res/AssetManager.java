@@ -0,0 +1,14 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JVM stand-in for the Android asset manager: no assets.
+ */
+public class AssetManager {
+  public InputStream open(final String fileName) throws IOException {
+    throw new FileNotFoundException(fileName);
+  }
+}
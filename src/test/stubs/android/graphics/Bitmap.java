@@ -0,0 +1,57 @@
+package android.graphics;
+
+import java.io.OutputStream;
+
+/**
+ * JVM stand-in for an Android bitmap: ARGB pixels in memory.
+ */
+public class Bitmap {
+
+  public enum CompressFormat {
+    JPEG, PNG, WEBP
+  }
+
+  public enum Config {
+    ALPHA_8, RGB_565, ARGB_8888
+  }
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+
+  private Bitmap(final int width, final int height) {
+    this.width = width;
+    this.height = height;
+    this.pixels = new int[width * height];
+  }
+
+  public static Bitmap createBitmap(final int width, final int height, final Config config) {
+    return new Bitmap(width, height);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  public void getPixels(final int[] out, final int offset, final int stride,
+                        final int x, final int y, final int width, final int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(pixels, (y + row) * this.width + x, out, offset + row * stride, width);
+    }
+  }
+
+  public void setPixels(final int[] in, final int offset, final int stride,
+                        final int x, final int y, final int width, final int height) {
+    for (int row = 0; row < height; row++) {
+      System.arraycopy(in, offset + row * stride, pixels, (y + row) * this.width + x, width);
+    }
+  }
+
+  public boolean compress(final CompressFormat format, final int quality, final OutputStream stream) {
+    throw new UnsupportedOperationException();
+  }
+}
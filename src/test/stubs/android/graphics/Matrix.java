@@ -0,0 +1,18 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android transformation matrix; only what the tested classes call.
+ */
+public class Matrix {
+  public boolean postTranslate(final float dx, final float dy) {
+    throw new UnsupportedOperationException();
+  }
+
+  public boolean postRotate(final float degrees) {
+    throw new UnsupportedOperationException();
+  }
+
+  public boolean postScale(final float sx, final float sy) {
+    throw new UnsupportedOperationException();
+  }
+}
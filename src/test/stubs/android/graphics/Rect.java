@@ -0,0 +1,53 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android integer rectangle.
+ */
+public final class Rect {
+  public int left;
+  public int top;
+  public int right;
+  public int bottom;
+
+  public Rect() {
+  }
+
+  public Rect(final int left, final int top, final int right, final int bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public int width() {
+    return right - left;
+  }
+
+  public int height() {
+    return bottom - top;
+  }
+
+  public void set(final Rect src) {
+    left = src.left;
+    top = src.top;
+    right = src.right;
+    bottom = src.bottom;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (!(o instanceof Rect)) return false;
+    final Rect r = (Rect) o;
+    return left == r.left && top == r.top && right == r.right && bottom == r.bottom;
+  }
+
+  @Override
+  public int hashCode() {
+    return ((left * 31 + top) * 31 + right) * 31 + bottom;
+  }
+
+  @Override
+  public String toString() {
+    return "Rect(" + left + ", " + top + " - " + right + ", " + bottom + ")";
+  }
+}
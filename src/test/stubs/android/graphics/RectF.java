@@ -0,0 +1,38 @@
+package android.graphics;
+
+/**
+ * JVM stand-in for an Android float rectangle.
+ */
+public class RectF {
+  public float left;
+  public float top;
+  public float right;
+  public float bottom;
+
+  public RectF() {
+  }
+
+  public RectF(final float left, final float top, final float right, final float bottom) {
+    this.left = left;
+    this.top = top;
+    this.right = right;
+    this.bottom = bottom;
+  }
+
+  public RectF(final RectF r) {
+    this(r.left, r.top, r.right, r.bottom);
+  }
+
+  public final float width() {
+    return right - left;
+  }
+
+  public final float height() {
+    return bottom - top;
+  }
+
+  @Override
+  public String toString() {
+    return "RectF(" + left + ", " + top + ", " + right + ", " + bottom + ")";
+  }
+}
@@ -0,0 +1,23 @@
+package android.net;
+
+import java.io.File;
+
+/**
+ * JVM stand-in for an Android URI; only file URIs.
+ */
+public final class Uri {
+  private final String uri;
+
+  private Uri(final String uri) {
+    this.uri = uri;
+  }
+
+  public static Uri fromFile(final File file) {
+    return new Uri(file.toURI().toString().replaceFirst("^file:/+", "file:///"));
+  }
+
+  @Override
+  public String toString() {
+    return uri;
+  }
+}
@@ -0,0 +1,27 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android build constants, describing an Android 9 device.
+ */
+public final class Build {
+  public static final String MODEL = "jvm";
+  public static final String BOARD = "jvm";
+  public static final String HARDWARE = "jvm";
+
+  private Build() {
+  }
+
+  public static final class VERSION {
+    public static final int SDK_INT = 28;
+
+    private VERSION() {
+    }
+  }
+
+  public static final class VERSION_CODES {
+    public static final int P = 28;
+
+    private VERSION_CODES() {
+    }
+  }
+}
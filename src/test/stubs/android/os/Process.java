@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * JVM stand-in for Android thread priorities; setting one has no effect.
+ */
+public final class Process {
+  public static final int THREAD_PRIORITY_DEFAULT = 0;
+  public static final int THREAD_PRIORITY_BACKGROUND = 10;
+  public static final int THREAD_PRIORITY_DISPLAY = -4;
+  public static final int THREAD_PRIORITY_MORE_FAVORABLE = -1;
+  public static final int THREAD_PRIORITY_LESS_FAVORABLE = 1;
+
+  private Process() {
+  }
+
+  public static void setThreadPriority(final int priority) {
+  }
+}
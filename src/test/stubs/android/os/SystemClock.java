@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * JVM stand-in for the Android clock, based on {@link System#nanoTime()}.
+ */
+public final class SystemClock {
+
+  private SystemClock() {
+  }
+
+  public static long uptimeMillis() {
+    return System.nanoTime() / 1000000;
+  }
+
+  public static long elapsedRealtime() {
+    return System.nanoTime() / 1000000;
+  }
+}
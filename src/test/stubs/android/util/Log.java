@@ -0,0 +1,59 @@
+package android.util;
+
+/**
+ * JVM stand-in for the Android log: drops everything.
+ */
+public final class Log {
+  public static final int VERBOSE = 2;
+  public static final int DEBUG = 3;
+  public static final int INFO = 4;
+  public static final int WARN = 5;
+  public static final int ERROR = 6;
+
+  private Log() {
+  }
+
+  public static boolean isLoggable(final String tag, final int level) {
+    return false;
+  }
+
+  public static int v(final String tag, final String msg) {
+    return 0;
+  }
+
+  public static int v(final String tag, final String msg, final Throwable tr) {
+    return 0;
+  }
+
+  public static int d(final String tag, final String msg) {
+    return 0;
+  }
+
+  public static int d(final String tag, final String msg, final Throwable tr) {
+    return 0;
+  }
+
+  public static int i(final String tag, final String msg) {
+    return 0;
+  }
+
+  public static int i(final String tag, final String msg, final Throwable tr) {
+    return 0;
+  }
+
+  public static int w(final String tag, final String msg) {
+    return 0;
+  }
+
+  public static int w(final String tag, final String msg, final Throwable tr) {
+    return 0;
+  }
+
+  public static int e(final String tag, final String msg) {
+    return 0;
+  }
+
+  public static int e(final String tag, final String msg, final Throwable tr) {
+    return 0;
+  }
+}
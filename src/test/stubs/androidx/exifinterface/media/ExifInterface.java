@@ -0,0 +1,11 @@
+package androidx.exifinterface.media;
+
+/**
+ * JVM stand-in for the AndroidX EXIF interface: the orientation constants.
+ */
+public class ExifInterface {
+  public static final int ORIENTATION_NORMAL = 1;
+  public static final int ORIENTATION_ROTATE_180 = 3;
+  public static final int ORIENTATION_ROTATE_90 = 6;
+  public static final int ORIENTATION_ROTATE_270 = 8;
+}
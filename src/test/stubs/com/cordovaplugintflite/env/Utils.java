@@ -0,0 +1,37 @@
+package com.cordovaplugintflite.env;
+
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * JVM stand-in for the plugin's {@code Utils}, which draws on the Android graphics classes.
+ */
+public class Utils {
+  /**
+   * Maps a temporary copy of the asset; the plugin maps the asset file itself.
+   */
+  public static MappedByteBuffer loadModelFile(final AssetManager assets, final String modelFilename)
+    throws IOException {
+    final File copy = File.createTempFile("model", ".tflite");
+    copy.deleteOnExit();
+    try (InputStream in = assets.open(modelFilename)) {
+      Files.copy(in, copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    try (RandomAccessFile file = new RandomAccessFile(copy, "r")) {
+      return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+    }
+  }
+
+  // expit is the same as the plugin's.
+  public static float expit(final float x) {
+    return (float) (1. / (1. + Math.exp(-x)));
+  }
+}
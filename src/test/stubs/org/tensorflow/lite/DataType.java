@@ -0,0 +1,8 @@
+package org.tensorflow.lite;
+
+/**
+ * JVM stand-in for the TFLite tensor types.
+ */
+public enum DataType {
+  FLOAT32, INT32, UINT8, INT64, STRING, BOOL, INT16, INT8
+}
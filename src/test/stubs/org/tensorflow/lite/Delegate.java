@@ -0,0 +1,9 @@
+package org.tensorflow.lite;
+
+/**
+ * JVM stand-in for a TFLite delegate.
+ */
+public interface Delegate extends AutoCloseable {
+  @Override
+  void close();
+}
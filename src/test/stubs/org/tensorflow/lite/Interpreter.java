@@ -0,0 +1,62 @@
+package org.tensorflow.lite;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * JVM stand-in for the TFLite interpreter. There is no runtime to load a model into; tests
+ * subclass it through the protected constructor to script the tensors and inference.
+ */
+public class Interpreter implements AutoCloseable {
+
+  public static class Options {
+    public Options setNumThreads(final int numThreads) {
+      return this;
+    }
+
+    public Options setUseXNNPACK(final boolean useXNNPACK) {
+      return this;
+    }
+
+    public Options setAllowFp16PrecisionForFp32(final boolean allow) {
+      return this;
+    }
+
+    public Options addDelegate(final Delegate delegate) {
+      return this;
+    }
+  }
+
+  public Interpreter(final ByteBuffer model, final Options options) {
+    throw new UnsupportedOperationException("No TFLite runtime on the JVM");
+  }
+
+  protected Interpreter() {
+  }
+
+  public Tensor getInputTensor(final int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  public int getOutputTensorCount() {
+    throw new UnsupportedOperationException();
+  }
+
+  public Tensor getOutputTensor(final int index) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void runForMultipleInputsOutputs(final Object[] inputs, final Map<Integer, Object> outputs) {
+    throw new UnsupportedOperationException();
+  }
+
+  public void setNumThreads(final int numThreads) {
+  }
+
+  public void setUseNNAPI(final boolean useNNAPI) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
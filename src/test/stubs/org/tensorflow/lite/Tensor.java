@@ -0,0 +1,32 @@
+package org.tensorflow.lite;
+
+/**
+ * JVM stand-in for a TFLite tensor.
+ */
+public interface Tensor {
+  DataType dataType();
+
+  int[] shape();
+
+  int numBytes();
+
+  QuantizationParams quantizationParams();
+
+  class QuantizationParams {
+    private final float scale;
+    private final int zeroPoint;
+
+    public QuantizationParams(final float scale, final int zeroPoint) {
+      this.scale = scale;
+      this.zeroPoint = zeroPoint;
+    }
+
+    public float getScale() {
+      return scale;
+    }
+
+    public int getZeroPoint() {
+      return zeroPoint;
+    }
+  }
+}
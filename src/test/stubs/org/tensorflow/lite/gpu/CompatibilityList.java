@@ -0,0 +1,14 @@
+package org.tensorflow.lite.gpu;
+
+/**
+ * JVM stand-in for the GPU delegate allow list: no GPU.
+ */
+public class CompatibilityList implements AutoCloseable {
+  public boolean isDelegateSupportedOnThisDevice() {
+    return false;
+  }
+
+  @Override
+  public void close() {
+  }
+}
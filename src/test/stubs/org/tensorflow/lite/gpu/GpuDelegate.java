@@ -0,0 +1,22 @@
+package org.tensorflow.lite.gpu;
+
+import org.tensorflow.lite.Delegate;
+
+/**
+ * JVM stand-in for the GPU delegate.
+ */
+public class GpuDelegate implements Delegate {
+
+  public static class Options {
+    public Options setSerializationParams(final String serializationDir, final String modelToken) {
+      return this;
+    }
+  }
+
+  public GpuDelegate(final Options options) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,26 @@
+package org.tensorflow.lite.nnapi;
+
+import org.tensorflow.lite.Delegate;
+
+/**
+ * JVM stand-in for the NNAPI delegate.
+ */
+public class NnApiDelegate implements Delegate {
+
+  public static class Options {
+    public Options setCacheDir(final String cacheDir) {
+      return this;
+    }
+
+    public Options setModelToken(final String modelToken) {
+      return this;
+    }
+  }
+
+  public NnApiDelegate(final Options options) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -49,6 +49,24 @@ CameraPreview.startCamera = function(options, onSuccess, onError) {
 
   options.overlay = options.overlay || 'idc_front';
 
+  options.detectClasses = options.detectClasses || [];
+
+  options.delegate = options.delegate || 'auto';
+
+  options.numThreads = options.numThreads || 0;
+
+  options.previewBuffers = options.previewBuffers || 3;
+
+  options.useCamera2 = options.useCamera2 || false;
+
+  if (typeof(options.maxDetectionRate) === 'undefined') {
+    options.maxDetectionRate = 10;
+  }
+
+  options.minSharpness = options.minSharpness || 0;
+
+  options.detailedEvents = options.detailedEvents || false;
+
   exec(onSuccess, onError, PLUGIN_NAME, "startCamera", [
     options.x,
     options.y,
@@ -63,7 +81,15 @@ CameraPreview.startCamera = function(options, onSuccess, onError) {
     options.disableExifHeaderStripping,
     options.storeToFile,
     options.overlay,
-    options.colorBackground
+    options.colorBackground,
+    options.detectClasses,
+    options.delegate,
+    options.numThreads,
+    options.previewBuffers,
+    options.useCamera2,
+    options.maxDetectionRate,
+    options.minSharpness,
+    options.detailedEvents
   ]);
 };
 
@@ -99,7 +125,9 @@ CameraPreview.takeSnapshot = function(opts, onSuccess, onError) {
     opts.quality = 85;
   }
 
-  exec(onSuccess, onError, PLUGIN_NAME, "takeSnapshot", [opts.quality]);
+  opts.transport = opts.transport || CameraPreview.RESULT_TRANSPORT.BASE64;
+
+  exec(onSuccess, onError, PLUGIN_NAME, "takeSnapshot", [opts.quality, !!opts.rotatePixels, opts.transport]);
 };
 
 CameraPreview.takePicture = function(opts, onSuccess, onError) {
@@ -116,12 +144,14 @@ CameraPreview.takePicture = function(opts, onSuccess, onError) {
 
   opts.width = opts.width || 0;
   opts.height = opts.height || 0;
+  opts.cropWidth = opts.cropWidth || 0;
+  opts.transport = opts.transport || CameraPreview.RESULT_TRANSPORT.BASE64;
 
   if (!opts.quality || opts.quality > 100 || opts.quality < 0) {
     opts.quality = 85;
   }
 
-  exec(onSuccess, onError, PLUGIN_NAME, "takePicture", [opts.width, opts.height, opts.quality]);
+  exec(onSuccess, onError, PLUGIN_NAME, "takePicture", [opts.width, opts.height, opts.quality, opts.cropWidth, opts.transport]);
 };
 
 CameraPreview.setColorEffect = function(effect, onSuccess, onError) {
@@ -228,6 +258,10 @@ CameraPreview.getCameraCharacteristics = function(onSuccess, onError) {
   exec(onSuccess, onError, PLUGIN_NAME, "getCameraCharacteristics", []);
 };
 
+CameraPreview.getStats = function(onSuccess, onError) {
+  exec(onSuccess, onError, PLUGIN_NAME, "getStats", []);
+};
+
 CameraPreview.onBackButton = function(onSuccess, onError) {
   exec(onSuccess, onError, PLUGIN_NAME, "onBackButton");
 };
@@ -338,4 +372,10 @@ CameraPreview.CAMERA_DIRECTION = {
   FRONT: 'front'
 };
 
+CameraPreview.RESULT_TRANSPORT = {
+  BASE64: 'base64',
+  ARRAY_BUFFER: 'arraybuffer', // Android Only. Still Base64 over the bridge, but no string to decode
+  URL: 'url' // Android Only. A URL on the app origin, loadable for 60 seconds or until 8 newer captures
+};
+
 module.exports = CameraPreview;